@@ -0,0 +1,118 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs asynchronous JIRA requests, with no more than a fixed number in flight at any time.
+ * Requests beyond the limit wait in a queue, without holding a thread, until an earlier request completes.
+ * Cancelling a queued request removes it from the queue; cancelling a running request aborts it.
+ */
+class AsyncRequestQueue {
+
+    private final int maxRequestsInFlight;
+    private final Queue<PendingRequest> pendingRequests = new LinkedList<PendingRequest>();
+    private int requestsInFlight;
+
+    AsyncRequestQueue(int maxRequestsInFlight) {
+        this.maxRequestsInFlight = Math.max(1, maxRequestsInFlight);
+    }
+
+    public ListenableFuture<Response> submit(Invocation invocation) {
+        PendingRequest request = new PendingRequest(invocation);
+        synchronized (this) {
+            pendingRequests.add(request);
+        }
+        startPendingRequests();
+        return request.response;
+    }
+
+    synchronized int getRequestsInFlight() {
+        return requestsInFlight;
+    }
+
+    private void startPendingRequests() {
+        while (true) {
+            PendingRequest next;
+            synchronized (this) {
+                if (requestsInFlight >= maxRequestsInFlight || pendingRequests.isEmpty()) {
+                    return;
+                }
+                next = pendingRequests.poll();
+                if (next.response.isCancelled()) {
+                    continue;
+                }
+                requestsInFlight++;
+            }
+            next.start();
+        }
+    }
+
+    private void requestFinished() {
+        synchronized (this) {
+            requestsInFlight--;
+        }
+        startPendingRequests();
+    }
+
+    private class PendingRequest implements InvocationCallback<Response>, Runnable {
+        private final Invocation invocation;
+        private final SettableFuture<Response> response = SettableFuture.create();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Future<Response> request;
+
+        PendingRequest(Invocation invocation) {
+            this.invocation = invocation;
+        }
+
+        void start() {
+            try {
+                request = invocation.submit(this);
+                response.addListener(this, MoreExecutors.sameThreadExecutor());
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public void completed(Response completedResponse) {
+            if (!response.set(completedResponse)) {
+                completedResponse.close();
+            }
+            finish();
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            response.setException(throwable);
+            finish();
+        }
+
+        /**
+         * Abort the HTTP request if the caller cancels it while it is running.
+         */
+        @Override
+        public void run() {
+            if (response.isCancelled()) {
+                request.cancel(true);
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                requestFinished();
+            }
+        }
+    }
+}
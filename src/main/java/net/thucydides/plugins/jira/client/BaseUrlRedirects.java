@@ -0,0 +1,44 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The base URLs that JIRA servers have redirected to, so that later requests can be sent straight to the
+ * redirected location instead of being redirected again. Redirects are shared by every client in the JVM,
+ * and are forgotten after a while in case the server configuration changes.
+ */
+final class BaseUrlRedirects {
+
+    private static final long TIME_TO_LIVE_IN_MINUTES = 30;
+
+    private static final Cache<String, String> RESOLVED_BASE_URLS = CacheBuilder.newBuilder()
+            .expireAfterWrite(TIME_TO_LIVE_IN_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    private BaseUrlRedirects() {
+    }
+
+    static Optional<String> resolvedBaseUrlFor(String baseUrl) {
+        return Optional.fromNullable(RESOLVED_BASE_URLS.getIfPresent(normalized(baseUrl)));
+    }
+
+    static void remember(String baseUrl, String resolvedBaseUrl) {
+        if (normalized(baseUrl).equals(normalized(resolvedBaseUrl))) {
+            RESOLVED_BASE_URLS.invalidate(normalized(baseUrl));
+        } else {
+            RESOLVED_BASE_URLS.put(normalized(baseUrl), resolvedBaseUrl);
+        }
+    }
+
+    static void forget(String baseUrl) {
+        RESOLVED_BASE_URLS.invalidate(normalized(baseUrl));
+    }
+
+    private static String normalized(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+}
@@ -0,0 +1,75 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size, expiry and refresh settings for one of the caches kept by the JIRA REST client.
+ * Times are in milliseconds, and a time of zero turns that policy off.
+ */
+public class CachePolicy {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final long maximumSize;
+    private final long expireAfterWrite;
+    private final long refreshAfterWrite;
+
+    public CachePolicy(long maximumSize, long expireAfterWrite, long refreshAfterWrite) {
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.refreshAfterWrite = refreshAfterWrite;
+    }
+
+    /**
+     * Up to 1000 entries, which never expire and are never refreshed.
+     */
+    public static CachePolicy defaults() {
+        return new CachePolicy(DEFAULT_MAXIMUM_SIZE, 0, 0);
+    }
+
+    public CachePolicy withMaximumSize(long maximumSize) {
+        return new CachePolicy(maximumSize, expireAfterWrite, refreshAfterWrite);
+    }
+
+    /**
+     * @param expireAfterWrite how long an entry may be served before it must be loaded again
+     */
+    public CachePolicy withExpireAfterWrite(long expireAfterWrite) {
+        return new CachePolicy(maximumSize, expireAfterWrite, refreshAfterWrite);
+    }
+
+    /**
+     * @param refreshAfterWrite how long after it was loaded an entry is reloaded in the background.
+     *                          Readers are given the old value until the reload completes.
+     */
+    public CachePolicy withRefreshAfterWrite(long refreshAfterWrite) {
+        return new CachePolicy(maximumSize, expireAfterWrite, refreshAfterWrite);
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public long getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    CacheBuilder<Object, Object> cacheBuilder() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                                                           .maximumSize(maximumSize)
+                                                           .recordStats();
+        if (expireAfterWrite > 0) {
+            builder.expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS);
+        }
+        if (refreshAfterWrite > 0) {
+            builder.refreshAfterWrite(refreshAfterWrite, TimeUnit.MILLISECONDS);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,128 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the bodies of slow-changing resources, such as project versions and field metadata, along with
+ * the validators (ETag and Last-Modified) the server sent with them.
+ * A resource with validators is always revalidated with a conditional request, so reading it again costs a
+ * 304 response rather than a full download. A resource without validators is reused for a fixed time instead.
+ */
+class ConditionalGetCache {
+
+    static final int NOT_MODIFIED = 304;
+
+    private static final int MAXIMUM_RESOURCES = 500;
+
+    private final long freshness;
+    private final Cache<String, Representation> representations
+            = CacheBuilder.newBuilder().maximumSize(MAXIMUM_RESOURCES).build();
+
+    /**
+     * @param freshness how long, in milliseconds, a resource sent without validators is reused
+     */
+    ConditionalGetCache(long freshness) {
+        this.freshness = freshness;
+    }
+
+    /**
+     * The stored body of a resource that can be used without asking the server.
+     */
+    public Optional<byte[]> freshBodyOf(WebTarget target) {
+        Representation representation = representations.getIfPresent(keyOf(target));
+        if (representation != null && !representation.hasValidators() && !representation.isOlderThan(freshness)) {
+            return Optional.of(representation.body);
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * A GET request for the resource, made conditional on the validators of the stored body if there is one.
+     */
+    public Invocation.Builder conditionalRequest(WebTarget target) {
+        Invocation.Builder request = target.request();
+        Representation representation = representations.getIfPresent(keyOf(target));
+        if (representation != null) {
+            if (representation.eTag != null) {
+                request.header(HttpHeaders.IF_NONE_MATCH, representation.eTag);
+            }
+            if (representation.lastModified != null) {
+                request.header(HttpHeaders.IF_MODIFIED_SINCE, representation.lastModified);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * The stored body of a resource the server reported as not modified.
+     */
+    public Optional<byte[]> notModified(WebTarget target) {
+        Representation representation = representations.getIfPresent(keyOf(target));
+        if (representation == null) {
+            return Optional.absent();
+        }
+        representations.put(keyOf(target), representation.revalidated());
+        return Optional.of(representation.body);
+    }
+
+    /**
+     * Read and store the body of a successful response.
+     */
+    public byte[] store(WebTarget target, Response response) throws IOException {
+        InputStream entity = response.readEntity(InputStream.class);
+        try {
+            byte[] body = ByteStreams.toByteArray(entity);
+            representations.put(keyOf(target), new Representation(body,
+                                                                  response.getHeaderString(HttpHeaders.ETAG),
+                                                                  response.getHeaderString(HttpHeaders.LAST_MODIFIED),
+                                                                  System.currentTimeMillis()));
+            return body;
+        } finally {
+            entity.close();
+        }
+    }
+
+    public void evict(WebTarget target) {
+        representations.invalidate(keyOf(target));
+    }
+
+    private String keyOf(WebTarget target) {
+        return target.getUri().toString();
+    }
+
+    private static class Representation {
+        final byte[] body;
+        final String eTag;
+        final String lastModified;
+        final long storedAt;
+
+        Representation(byte[] body, String eTag, String lastModified, long storedAt) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+
+        boolean hasValidators() {
+            return eTag != null || lastModified != null;
+        }
+
+        boolean isOlderThan(long age) {
+            return System.currentTimeMillis() - storedAt >= age;
+        }
+
+        Representation revalidated() {
+            return new Representation(body, eTag, lastModified, System.currentTimeMillis());
+        }
+    }
+}
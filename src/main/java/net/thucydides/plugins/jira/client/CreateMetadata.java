@@ -0,0 +1,38 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import net.thucydides.plugins.jira.model.CascadingSelectOptions;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The option fields that can be set when creating an issue in a project, for every issue type of the project.
+ * Option trees are built once, when the create metadata is read, and are indexed by issue type and field name.
+ */
+class CreateMetadata {
+
+    static final CreateMetadata EMPTY = new CreateMetadata(ImmutableMap.<String, Map<String, CascadingSelectOptions>>of());
+
+    private final Map<String, Map<String, CascadingSelectOptions>> optionsByIssueType;
+
+    /**
+     * @param optionsByIssueType the options of each field, by lower-case issue type name and lower-case field name
+     */
+    CreateMetadata(Map<String, Map<String, CascadingSelectOptions>> optionsByIssueType) {
+        this.optionsByIssueType = ImmutableMap.copyOf(optionsByIssueType);
+    }
+
+    static String normalized(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    public Optional<CascadingSelectOptions> optionsFor(String issueType, String fieldName) {
+        Map<String, CascadingSelectOptions> fieldOptions = optionsByIssueType.get(normalized(issueType));
+        if (fieldOptions == null) {
+            return Optional.absent();
+        }
+        return Optional.fromNullable(fieldOptions.get(normalized(fieldName)));
+    }
+}
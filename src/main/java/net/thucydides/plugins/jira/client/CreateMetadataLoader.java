@@ -0,0 +1,19 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.cache.CacheLoader;
+
+/**
+ * Loads the create metadata of a project, for all of its issue types at once.
+ */
+class CreateMetadataLoader extends CacheLoader<String, CreateMetadata> {
+    private final JerseyJiraClient jiraClient;
+
+    CreateMetadataLoader(JerseyJiraClient jiraClient) {
+        this.jiraClient = jiraClient;
+    }
+
+    @Override
+    public CreateMetadata load(String project) throws Exception {
+        return jiraClient.loadCreateMetadata(project);
+    }
+}
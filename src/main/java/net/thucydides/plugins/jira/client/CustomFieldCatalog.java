@@ -0,0 +1,85 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.model.CustomField;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields defined on a JIRA server, indexed by name and by id.
+ * A catalog is immutable, so it can be shared freely between threads and clients.
+ */
+class CustomFieldCatalog {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<CustomField> fields;
+    private final Map<String, CustomField> fieldsByName;
+    private final Map<String, String> namesById;
+    private final long loadedAt;
+
+    CustomFieldCatalog(List<CustomField> fields, long loadedAt) {
+        this.fields = ImmutableList.copyOf(fields);
+        this.loadedAt = loadedAt;
+        Map<String, CustomField> fieldsByName = Maps.newHashMap();
+        Map<String, String> namesById = Maps.newHashMap();
+        for (CustomField field : fields) {
+            fieldsByName.put(field.getName(), field);
+            namesById.put(field.getId(), field.getName());
+        }
+        this.fieldsByName = ImmutableMap.copyOf(fieldsByName);
+        this.namesById = ImmutableMap.copyOf(namesById);
+    }
+
+    public List<CustomField> getFields() {
+        return fields;
+    }
+
+    public Map<String, CustomField> getFieldsByName() {
+        return fieldsByName;
+    }
+
+    public Map<String, String> getNamesById() {
+        return namesById;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public boolean isOlderThan(long timeToLive) {
+        return System.currentTimeMillis() - loadedAt > timeToLive;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(loadedAt);
+        out.writeInt(fields.size());
+        for (CustomField field : fields) {
+            out.writeUTF(field.getId());
+            out.writeUTF(field.getName());
+            out.writeUTF(field.getType());
+        }
+    }
+
+    public static CustomFieldCatalog readFrom(DataInput in) throws IOException {
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported field catalog format version " + version);
+        }
+        long loadedAt = in.readLong();
+        int fieldCount = in.readInt();
+        List<CustomField> fields = Lists.newArrayListWithCapacity(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(new CustomField(in.readUTF(), in.readUTF(), in.readUTF()));
+        }
+        return new CustomFieldCatalog(fields, loadedAt);
+    }
+}
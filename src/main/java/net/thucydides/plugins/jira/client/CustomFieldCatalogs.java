@@ -0,0 +1,122 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Field catalogs shared by every client in the JVM that talks to the same JIRA server as the same user.
+ * A catalog is downloaded by one thread at a time, while any other threads asking for it wait for the result.
+ * Catalogs can also be kept in a file, so that other JVMs can use them until they reach their time to live.
+ */
+class CustomFieldCatalogs {
+
+    private static final Cache<String, CustomFieldCatalog> CATALOGS = CacheBuilder.newBuilder().build();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomFieldCatalogs.class);
+
+    private CustomFieldCatalogs() {}
+
+    /**
+     * @param server identifies the JIRA server and user
+     * @param timeToLive how long, in milliseconds, a catalog may be used before it is downloaded again
+     * @param catalogFile where the catalog is kept between JVMs, if anywhere
+     * @param download fetches the catalog from the server
+     */
+    static CustomFieldCatalog catalogFor(String server, long timeToLive, Optional<File> catalogFile,
+                                         Callable<CustomFieldCatalog> download) throws ExecutionException {
+        StoredOrDownloaded loader = new StoredOrDownloaded(timeToLive, catalogFile, download);
+        CustomFieldCatalog catalog = CATALOGS.get(server, loader);
+        if (!loader.wasCalled() && catalog.isOlderThan(timeToLive)) {
+            CATALOGS.asMap().remove(server, catalog);
+            catalog = CATALOGS.get(server, loader);
+        }
+        return catalog;
+    }
+
+    private static class StoredOrDownloaded implements Callable<CustomFieldCatalog> {
+        private final long timeToLive;
+        private final Optional<File> catalogFile;
+        private final Callable<CustomFieldCatalog> download;
+        private volatile boolean called;
+
+        StoredOrDownloaded(long timeToLive, Optional<File> catalogFile, Callable<CustomFieldCatalog> download) {
+            this.timeToLive = timeToLive;
+            this.catalogFile = catalogFile;
+            this.download = download;
+        }
+
+        @Override
+        public CustomFieldCatalog call() throws Exception {
+            called = true;
+            if (catalogFile.isPresent()) {
+                Optional<CustomFieldCatalog> storedCatalog = read(catalogFile.get());
+                if (storedCatalog.isPresent() && !storedCatalog.get().isOlderThan(timeToLive)) {
+                    return storedCatalog.get();
+                }
+            }
+            CustomFieldCatalog catalog = download.call();
+            if (catalogFile.isPresent()) {
+                write(catalog, catalogFile.get());
+            }
+            return catalog;
+        }
+
+        boolean wasCalled() {
+            return called;
+        }
+
+        private Optional<CustomFieldCatalog> read(File file) {
+            if (!file.isFile()) {
+                return Optional.absent();
+            }
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    return Optional.of(CustomFieldCatalog.readFrom(in));
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable field catalog {}", file, e);
+                return Optional.absent();
+            }
+        }
+
+        private void write(CustomFieldCatalog catalog, File file) {
+            File temporaryFile = null;
+            try {
+                file.getParentFile().mkdirs();
+                temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+                try {
+                    catalog.writeTo(out);
+                } finally {
+                    out.close();
+                }
+                Files.move(temporaryFile.toPath(), file.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOGGER.warn("Could not store the field catalog in {}", file, e);
+                if (temporaryFile != null) {
+                    temporaryFile.delete();
+                }
+            }
+        }
+    }
+}
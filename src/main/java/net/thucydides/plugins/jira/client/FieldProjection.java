@@ -0,0 +1,116 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The issue fields and expansions requested from JIRA, and decoded, for a query.
+ * Asking only for the fields a caller needs (and leaving out the rendered HTML) keeps responses small.
+ */
+public class FieldProjection {
+
+    private static final Set<String> STANDARD_FIELDS
+            = ImmutableSet.of("key", "summary", "description", "issuetype", "labels", "fixVersions",
+                              "updated");
+
+    /**
+     * All of the standard fields and the registered custom fields, with their rendered HTML views.
+     * Searches and key lookups request the same fields, so an issue is the same however it was loaded:
+     * other fields, and their rendered views, are not requested.
+     */
+    public static final FieldProjection ALL = new FieldProjection(STANDARD_FIELDS, true, true);
+
+    /**
+     * Just the issue keys and summaries.
+     */
+    public static final FieldProjection KEYS_AND_SUMMARIES
+            = new FieldProjection(ImmutableSet.of("key", "summary"), false, false);
+
+    private final Set<String> fields;
+    private final boolean customFieldsIncluded;
+    private final boolean renderedFieldsIncluded;
+
+    private FieldProjection(Set<String> fields, boolean customFieldsIncluded, boolean renderedFieldsIncluded) {
+        this.fields = ImmutableSet.copyOf(fields);
+        this.customFieldsIncluded = customFieldsIncluded;
+        this.renderedFieldsIncluded = renderedFieldsIncluded;
+    }
+
+    /**
+     * A projection of the given standard JIRA fields, without custom fields or rendered views.
+     */
+    public static FieldProjection fields(String... fields) {
+        return new FieldProjection(ImmutableSet.<String>builder().add("key").add(fields).build(), false, false);
+    }
+
+    public FieldProjection withFields(String... moreFields) {
+        return new FieldProjection(ImmutableSet.<String>builder().addAll(fields).add(moreFields).build(),
+                                   customFieldsIncluded, renderedFieldsIncluded);
+    }
+
+    public FieldProjection withCustomFields() {
+        return new FieldProjection(fields, true, renderedFieldsIncluded);
+    }
+
+    public FieldProjection withRenderedFields() {
+        return new FieldProjection(fields, customFieldsIncluded, true);
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public boolean includesCustomFields() {
+        return customFieldsIncluded;
+    }
+
+    public boolean includesRenderedFields() {
+        return renderedFieldsIncluded;
+    }
+
+    /**
+     * Does this projection request everything that the other projection requests?
+     */
+    public boolean covers(FieldProjection other) {
+        return fields.containsAll(other.fields)
+                && (customFieldsIncluded || !other.customFieldsIncluded)
+                && (renderedFieldsIncluded || !other.renderedFieldsIncluded);
+    }
+
+    String fieldsParameter(List<String> customFieldIds) {
+        List<String> requestedFields = Lists.newArrayList(fields);
+        if (customFieldsIncluded) {
+            requestedFields.addAll(customFieldIds);
+        }
+        return Joiner.on(",").join(requestedFields);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FieldProjection that = (FieldProjection) o;
+        return customFieldsIncluded == that.customFieldsIncluded
+                && renderedFieldsIncluded == that.renderedFieldsIncluded
+                && fields.equals(that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(fields, customFieldsIncluded, renderedFieldsIncluded);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldProjection{" +
+                "fields=" + fields +
+                ", customFields=" + customFieldsIncluded +
+                ", renderedFields=" + renderedFieldsIncluded +
+                '}';
+    }
+}
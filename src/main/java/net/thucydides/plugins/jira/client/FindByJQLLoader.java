@@ -1,11 +1,10 @@
 package net.thucydides.plugins.jira.client;
 
 import com.google.common.cache.CacheLoader;
-import net.thucydides.plugins.jira.domain.IssueSummary;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import java.util.List;
-
-public class FindByJQLLoader extends CacheLoader<String, List<IssueSummary>> {
+public class FindByJQLLoader extends CacheLoader<ProjectedLookup, SyncedQueryResult> {
     private final JerseyJiraClient jiraClient;
 
     public FindByJQLLoader(JerseyJiraClient jiraClient) {
@@ -13,7 +12,19 @@ public class FindByJQLLoader extends CacheLoader<String, List<IssueSummary>> {
     }
 
     @Override
-    public List<IssueSummary> load(String query) throws Exception {
-        return jiraClient.loadByJQL(query);
+    public SyncedQueryResult load(ProjectedLookup query) throws Exception {
+        long syncedAt = System.currentTimeMillis();
+        JerseyJiraClient client = jiraClient.clientFor(query);
+        return client.syncedResultOf(client.loadByJQL(query.getQuery(), query.getProjection()),
+                                     query.getProjection(), syncedAt);
+    }
+
+    /**
+     * Cached query results are refreshed incrementally, with only the issues that have changed being downloaded.
+     */
+    @Override
+    public ListenableFuture<SyncedQueryResult> reload(ProjectedLookup query, SyncedQueryResult previous)
+            throws Exception {
+        return Futures.immediateFuture(jiraClient.clientFor(query).syncByJQL(query.getQuery(), query.getProjection(), previous));
     }
 }
@@ -2,9 +2,15 @@ package net.thucydides.plugins.jira.client;
 
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListenableFuture;
 import net.thucydides.plugins.jira.domain.IssueSummary;
 
-public class FindByKeyLoader extends CacheLoader<String, Optional<IssueSummary>> {
+import java.util.Map;
+
+public class FindByKeyLoader extends CacheLoader<ProjectedLookup, Optional<IssueSummary>> {
     private final JerseyJiraClient jiraClient;
 
     public FindByKeyLoader(JerseyJiraClient jiraClient) {
@@ -12,7 +18,33 @@ public class FindByKeyLoader extends CacheLoader<String, Optional<IssueSummary>>
     }
 
     @Override
-    public Optional<IssueSummary> load(String key) throws Exception {
-        return jiraClient.loadByKey(key);
+    public Optional<IssueSummary> load(ProjectedLookup key) throws Exception {
+        Optional<ListenableFuture<Optional<IssueSummary>>> asyncLoad = jiraClient.getKeyLoads().joinIfPresent(key);
+        if (asyncLoad.isPresent()) {
+            return asyncLoad.get().get();
+        }
+        return jiraClient.clientFor(key).loadByKey(key.getValue(), key.getProjection());
+    }
+
+    /**
+     * Issues missing from the cache are fetched with a few key searches rather than one request per issue.
+     * Lookups are grouped by projection and field set, as each group is loaded and decoded in its own way.
+     */
+    @Override
+    public Map<ProjectedLookup, Optional<IssueSummary>> loadAll(Iterable<? extends ProjectedLookup> lookups)
+            throws Exception {
+        Multimap<ProjectedLookup, String> keysByNamespace = LinkedHashMultimap.create();
+        for (ProjectedLookup lookup : lookups) {
+            keysByNamespace.put(lookup.forKey(""), lookup.getValue());
+        }
+        Map<ProjectedLookup, Optional<IssueSummary>> issues = Maps.newHashMap();
+        for (ProjectedLookup namespace : keysByNamespace.keySet()) {
+            Map<String, Optional<IssueSummary>> loadedIssues = jiraClient.clientFor(namespace)
+                    .loadByKeys(keysByNamespace.get(namespace), namespace.getProjection());
+            for (Map.Entry<String, Optional<IssueSummary>> loadedIssue : loadedIssues.entrySet()) {
+                issues.put(namespace.forKey(loadedIssue.getKey()), loadedIssue.getValue());
+            }
+        }
+        return issues;
     }
 }
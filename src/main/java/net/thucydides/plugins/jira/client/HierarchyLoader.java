@@ -0,0 +1,93 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import org.json.JSONException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads a tree of issues one level at a time. The children of a whole level are found with a single search
+ * (or a few, for very wide levels, which run concurrently), so the number of round trips grows with the depth
+ * of the tree rather than with the number of issues in it.
+ */
+class HierarchyLoader {
+
+    /**
+     * Long queries are sent with POST, so this only limits the size of a single JQL IN list.
+     */
+    private static final int PARENTS_PER_SEARCH = 500;
+
+    private final JerseyJiraClient jiraClient;
+    private final ParentLink parentLink;
+    private final FieldProjection projection;
+    private final int maxDepth;
+
+    HierarchyLoader(JerseyJiraClient jiraClient, ParentLink parentLink, FieldProjection projection, int maxDepth) {
+        this.jiraClient = jiraClient;
+        this.parentLink = parentLink;
+        this.projection = parentLink.projectionFor(projection);
+        this.maxDepth = maxDepth;
+    }
+
+    IssueHierarchy load(Collection<String> rootKeys) throws JSONException {
+        IssueHierarchy hierarchy = new IssueHierarchy();
+        List<String> level = Lists.newArrayList();
+        for (Optional<IssueSummary> root : jiraClient.findByKeys(rootKeys, projection).values()) {
+            if (root.isPresent() && !hierarchy.contains(root.get().getKey())) {
+                hierarchy.addRoot(root.get());
+                level.add(root.get().getKey());
+            }
+        }
+        while (!level.isEmpty() && hierarchy.getDepth() < maxDepth) {
+            level = addChildren(hierarchy, childrenOf(level));
+            if (!level.isEmpty()) {
+                hierarchy.levelLoaded();
+            }
+        }
+        if (!level.isEmpty()) {
+            hierarchy.truncated();
+        }
+        return hierarchy;
+    }
+
+    private List<List<IssueSummary>> childrenOf(List<String> parentKeys) throws JSONException {
+        List<ListenableFuture<List<IssueSummary>>> searches = Lists.newArrayList();
+        for (List<String> parents : Lists.partition(parentKeys, PARENTS_PER_SEARCH)) {
+            searches.add(jiraClient.findByJQLAsync(parentLink.childrenOf(parents), projection));
+        }
+        try {
+            return Futures.allAsList(searches).get();
+        } catch (ExecutionException e) {
+            throw new JSONException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Issues already in the tree are skipped, so that links that loop back on themselves end the load.
+     *
+     * @return the keys of the children added, which make up the next level
+     */
+    private List<String> addChildren(IssueHierarchy hierarchy, List<List<IssueSummary>> searchResults) {
+        List<String> nextLevel = Lists.newArrayList();
+        for (List<IssueSummary> children : searchResults) {
+            for (IssueSummary child : children) {
+                Optional<String> parentKey = parentLink.parentOf(child);
+                if (parentKey.isPresent() && hierarchy.contains(parentKey.get())
+                        && !hierarchy.contains(child.getKey())) {
+                    hierarchy.addChild(parentKey.get(), child);
+                    nextLevel.add(child.getKey());
+                }
+            }
+        }
+        return nextLevel;
+    }
+}
@@ -0,0 +1,140 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Makes concurrent callers asking for the same thing share a single asynchronous load.
+ * Each caller gets its own future. The load is only cancelled once every caller sharing it has cancelled.
+ */
+class InFlightLoads<K, V> {
+
+    private final ConcurrentMap<K, SharedLoad> loads = Maps.newConcurrentMap();
+
+    /**
+     * Join the load in flight for this key, or start one if there is none.
+     */
+    public ListenableFuture<V> join(K key, Callable<ListenableFuture<V>> loader) {
+        while (true) {
+            SharedLoad load = loads.get(key);
+            if (load == null) {
+                SharedLoad newLoad = new SharedLoad(key);
+                load = loads.putIfAbsent(key, newLoad);
+                if (load == null) {
+                    load = newLoad;
+                    newLoad.start(loader);
+                }
+            }
+            Optional<ListenableFuture<V>> caller = load.addCaller();
+            if (caller.isPresent()) {
+                return caller.get();
+            }
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * Join the load in flight for this key, if there is one.
+     */
+    public Optional<ListenableFuture<V>> joinIfPresent(K key) {
+        SharedLoad load = loads.get(key);
+        return (load == null) ? Optional.<ListenableFuture<V>>absent() : load.addCaller();
+    }
+
+    private class SharedLoad {
+        private final K key;
+        private final SettableFuture<V> result = SettableFuture.create();
+        private ListenableFuture<V> source;
+        private int callers;
+        private boolean abandoned;
+
+        SharedLoad(K key) {
+            this.key = key;
+        }
+
+        /**
+         * The loader runs outside the lock, so that callers joining meanwhile are not held up by it.
+         */
+        void start(Callable<ListenableFuture<V>> loader) {
+            synchronized (this) {
+                if (abandoned) {
+                    return;
+                }
+            }
+            ListenableFuture<V> loaded;
+            try {
+                loaded = loader.call();
+            } catch (Exception e) {
+                loaded = Futures.immediateFailedFuture(e);
+            }
+            synchronized (this) {
+                source = loaded;
+                if (abandoned) {
+                    loaded.cancel(true);
+                    return;
+                }
+            }
+            Futures.addCallback(loaded, new FutureCallback<V>() {
+                @Override
+                public void onSuccess(V value) {
+                    loads.remove(key, SharedLoad.this);
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    loads.remove(key, SharedLoad.this);
+                    result.setException(throwable);
+                }
+            });
+        }
+
+        synchronized Optional<ListenableFuture<V>> addCaller() {
+            if (abandoned) {
+                return Optional.absent();
+            }
+            callers++;
+            final SettableFuture<V> caller = SettableFuture.create();
+            Futures.addCallback(result, new FutureCallback<V>() {
+                @Override
+                public void onSuccess(V value) {
+                    caller.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    caller.setException(throwable);
+                }
+            });
+            caller.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (caller.isCancelled()) {
+                        callerCancelled();
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            return Optional.<ListenableFuture<V>>of(caller);
+        }
+
+        private synchronized void callerCancelled() {
+            callers--;
+            if (callers == 0 && !result.isDone()) {
+                abandoned = true;
+                loads.remove(key, this);
+                if (source != null) {
+                    source.cancel(true);
+                }
+                result.cancel(false);
+            }
+        }
+    }
+}
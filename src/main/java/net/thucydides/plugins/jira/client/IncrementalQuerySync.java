@@ -0,0 +1,82 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import org.json.JSONException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the cached results of a JQL query up to date without downloading them all again.
+ * Issues updated since the last sync are loaded in full and replace their cached copies.
+ * A key-only search then gives the current result order, and shows which issues no longer match the query.
+ * Issues that have come to match the query are loaded by key as {@link JerseyJiraClient#findByKeys} loads them,
+ * so that one deleted or moved meanwhile is skipped rather than making the server reject its whole batch.
+ */
+class IncrementalQuerySync {
+
+    private static final long MILLISECONDS_PER_MINUTE = 60 * 1000L;
+    private static final long MARGIN_IN_MINUTES = 1;
+
+    private final JerseyJiraClient jiraClient;
+    private final String query;
+    private final FieldProjection projection;
+
+    IncrementalQuerySync(JerseyJiraClient jiraClient, String query, FieldProjection projection) {
+        this.jiraClient = jiraClient;
+        this.query = query;
+        this.projection = projection;
+    }
+
+    public SyncedQueryResult syncFrom(SyncedQueryResult previous) throws JSONException {
+        long syncedAt = System.currentTimeMillis();
+
+        Map<String, IssueSummary> knownIssues = Maps.newHashMap();
+        for (IssueSummary issue : previous.getIssues()) {
+            knownIssues.put(issue.getKey(), issue);
+        }
+        for (IssueSummary changedIssue : jiraClient.loadByJQL(changedIssuesQuery(previous, syncedAt), projection)) {
+            knownIssues.put(changedIssue.getKey(), changedIssue);
+        }
+
+        List<String> currentKeys = currentKeys();
+        List<String> missingKeys = Lists.newArrayList();
+        for (String key : currentKeys) {
+            if (!knownIssues.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        for (Map.Entry<String, Optional<IssueSummary>> missingIssue
+                : jiraClient.loadByKeys(missingKeys, projection).entrySet()) {
+            if (missingIssue.getValue().isPresent()) {
+                knownIssues.put(missingIssue.getKey(), missingIssue.getValue().get());
+            }
+        }
+
+        List<IssueSummary> issues = Lists.newArrayList();
+        for (String key : currentKeys) {
+            if (knownIssues.containsKey(key)) {
+                issues.add(knownIssues.get(key));
+            }
+        }
+        return jiraClient.syncedResultOf(issues, projection, syncedAt);
+    }
+
+    private String changedIssuesQuery(SyncedQueryResult previous, long syncedAt) {
+        long elapsedMinutes = (syncedAt - previous.getSyncedAt() + MILLISECONDS_PER_MINUTE - 1) / MILLISECONDS_PER_MINUTE;
+        return JQLClauses.restrict(query, JQLClauses.updatedWithinMinutes(elapsedMinutes + MARGIN_IN_MINUTES));
+    }
+
+    private List<String> currentKeys() {
+        List<String> keys = Lists.newArrayList();
+        Iterator<IssueSummary> issues = jiraClient.iterateByJQL(query, FieldProjection.fields());
+        while (issues.hasNext()) {
+            keys.add(issues.next().getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,107 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tree of issues, such as epics, their stories and the stories' sub-tasks, indexed by key.
+ * Children are listed in the order JIRA returned them.
+ */
+public class IssueHierarchy {
+
+    private final List<String> rootKeys = Lists.newArrayList();
+    private final Map<String, IssueSummary> issuesByKey = Maps.newLinkedHashMap();
+    private final Map<String, String> parentKeys = Maps.newHashMap();
+    private final ListMultimap<String, String> childKeys = ArrayListMultimap.create();
+    private int depth;
+    private boolean truncated;
+
+    IssueHierarchy() {}
+
+    void addRoot(IssueSummary root) {
+        rootKeys.add(root.getKey());
+        issuesByKey.put(root.getKey(), root);
+    }
+
+    void addChild(String parentKey, IssueSummary child) {
+        issuesByKey.put(child.getKey(), child);
+        parentKeys.put(child.getKey(), parentKey);
+        childKeys.put(parentKey, child.getKey());
+    }
+
+    void levelLoaded() {
+        depth++;
+    }
+
+    void truncated() {
+        truncated = true;
+    }
+
+    public List<IssueSummary> getRoots() {
+        return issuesFor(rootKeys);
+    }
+
+    public boolean contains(String key) {
+        return issuesByKey.containsKey(key);
+    }
+
+    public Optional<IssueSummary> getIssue(String key) {
+        return Optional.fromNullable(issuesByKey.get(key));
+    }
+
+    public List<IssueSummary> getChildren(String key) {
+        return issuesFor(childKeys.get(key));
+    }
+
+    public Optional<IssueSummary> getParent(String key) {
+        String parentKey = parentKeys.get(key);
+        return (parentKey == null) ? Optional.<IssueSummary>absent() : getIssue(parentKey);
+    }
+
+    /**
+     * @return every issue in the tree, level by level
+     */
+    public List<IssueSummary> getIssues() {
+        return ImmutableList.copyOf(issuesByKey.values());
+    }
+
+    /**
+     * @return the number of levels loaded below the roots
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true if the depth limit stopped the load before the deepest issues were checked for children
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private List<IssueSummary> issuesFor(List<String> keys) {
+        ImmutableList.Builder<IssueSummary> issues = ImmutableList.builder();
+        for (String key : keys) {
+            issues.add(issuesByKey.get(key));
+        }
+        return issues.build();
+    }
+
+    @Override
+    public String toString() {
+        return "IssueHierarchy{" +
+                "roots=" + rootKeys +
+                ", issues=" + issuesByKey.size() +
+                ", depth=" + depth +
+                (truncated ? ", truncated" : "") +
+                '}';
+    }
+}
@@ -0,0 +1,163 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.domain.CustomFieldCast;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Secondary indexes over the cached results of a JQL query, from each project key, issue key, issue type, label,
+ * fix version and custom field value to the positions of the issues that have it.
+ * Only the fields loaded by the projection of the results are indexed.
+ */
+class IssueIndex {
+
+    private static final Pattern ISSUE_KEY = Pattern.compile("[a-z][a-z0-9_]*-[0-9]+");
+
+    private final List<IssueSummary> issues;
+    private final Map<String, Map<String, BitSet>> postings = Maps.newHashMap();
+
+    private IssueIndex(List<IssueSummary> issues) {
+        this.issues = issues;
+    }
+
+    static IssueIndex of(List<IssueSummary> issues, FieldProjection projection, List<String> customFields) {
+        IssueIndex index = new IssueIndex(issues);
+        index.addField(JQLFilter.KEY);
+        index.addField(JQLFilter.PROJECT);
+        if (projection.getFields().contains("issuetype")) {
+            index.addField(JQLFilter.ISSUE_TYPE);
+        }
+        if (projection.getFields().contains("labels")) {
+            index.addField(JQLFilter.LABELS);
+        }
+        if (projection.getFields().contains("fixVersions")) {
+            index.addField(JQLFilter.FIX_VERSION);
+        }
+        if (projection.includesCustomFields()) {
+            for (String customField : customFields) {
+                index.addField(customField);
+            }
+        }
+        for (int position = 0; position < issues.size(); position++) {
+            index.add(position, issues.get(position), customFields);
+        }
+        return index;
+    }
+
+    /**
+     * The issues matching every condition of the filter, in the order of the cached results.
+     * Conditions the cached query already applies are skipped, since every issue meets them.
+     * Nothing is returned if a condition involves a field that is not indexed, or a value that no cached issue has
+     * (other than an issue key), as the value may be a name or id that only the server can resolve.
+     */
+    public Optional<List<IssueSummary>> select(JQLFilter filter, JQLFilter cachedQuery) {
+        BitSet matches = new BitSet(issues.size());
+        matches.set(0, issues.size());
+        for (Map.Entry<String, Set<String>> condition : filter.getConditions().entrySet()) {
+            if (condition.getValue().equals(cachedQuery.getConditions().get(condition.getKey()))) {
+                continue;
+            }
+            Map<String, BitSet> fieldPostings = postings.get(condition.getKey());
+            if (fieldPostings == null) {
+                return Optional.absent();
+            }
+            BitSet conditionMatches = new BitSet(issues.size());
+            for (String value : condition.getValue()) {
+                BitSet valueMatches = fieldPostings.get(value);
+                if (valueMatches != null) {
+                    conditionMatches.or(valueMatches);
+                } else if (!condition.getKey().equals(JQLFilter.KEY) || !ISSUE_KEY.matcher(value).matches()) {
+                    return Optional.absent();
+                }
+            }
+            matches.and(conditionMatches);
+        }
+        return Optional.<List<IssueSummary>>of(new SelectedIssues(issues, matches));
+    }
+
+    private void addField(String field) {
+        postings.put(field, Maps.<String, BitSet>newHashMap());
+    }
+
+    private void add(int position, IssueSummary issue, List<String> customFields) {
+        add(JQLFilter.KEY, issue.getKey(), position);
+        add(JQLFilter.PROJECT, projectKeyOf(issue.getKey()), position);
+        add(JQLFilter.ISSUE_TYPE, issue.getType(), position);
+        addAll(JQLFilter.LABELS, issue.getLabels(), position);
+        addAll(JQLFilter.FIX_VERSION, issue.getFixVersions(), position);
+        for (String customField : customFields) {
+            Optional<CustomFieldCast> customFieldValue = issue.customField(customField);
+            if (customFieldValue.isPresent()) {
+                Object value = customFieldValue.get().value();
+                if (value instanceof Iterable) {
+                    addAll(customField, (Iterable<?>) value, position);
+                } else {
+                    add(customField, value, position);
+                }
+            }
+        }
+    }
+
+    private void addAll(String field, Iterable<?> values, int position) {
+        if (values != null) {
+            for (Object value : values) {
+                add(field, value, position);
+            }
+        }
+    }
+
+    private void add(String field, Object value, int position) {
+        Map<String, BitSet> fieldPostings = postings.get(field);
+        if (fieldPostings == null || value == null) {
+            return;
+        }
+        String indexedValue = JQLFilter.normalized(value.toString());
+        BitSet positions = fieldPostings.get(indexedValue);
+        if (positions == null) {
+            positions = new BitSet();
+            fieldPostings.put(indexedValue, positions);
+        }
+        positions.set(position);
+    }
+
+    private static String projectKeyOf(String issueKey) {
+        int separator = issueKey.lastIndexOf('-');
+        return (separator < 0) ? issueKey : issueKey.substring(0, separator);
+    }
+
+    /**
+     * The matching issues, read through from the cached results so that issues held off-heap stay there.
+     */
+    private static class SelectedIssues extends AbstractList<IssueSummary> implements RandomAccess {
+        private final List<IssueSummary> issues;
+        private final int[] positions;
+
+        SelectedIssues(List<IssueSummary> issues, BitSet matches) {
+            this.issues = issues;
+            this.positions = new int[matches.cardinality()];
+            int next = 0;
+            for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+                positions[next++] = position;
+            }
+        }
+
+        @Override
+        public IssueSummary get(int index) {
+            return issues.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+}
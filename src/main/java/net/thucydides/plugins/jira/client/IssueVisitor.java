@@ -0,0 +1,10 @@
+package net.thucydides.plugins.jira.client;
+
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+/**
+ * Receives the issues matching a JQL query one at a time, as the result pages are downloaded.
+ */
+public interface IssueVisitor {
+    void visit(IssueSummary issue);
+}
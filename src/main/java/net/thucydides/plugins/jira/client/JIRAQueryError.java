@@ -0,0 +1,10 @@
+package net.thucydides.plugins.jira.client;
+
+/**
+ * A JQL query could not be completed while its results were being read.
+ */
+public class JIRAQueryError extends RuntimeException {
+    public JIRAQueryError(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,217 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites JQL queries into a single canonical form, so that queries that only differ in formatting share
+ * a cache entry. Whitespace and the spacing around operators are normalised, keywords are written in upper case,
+ * quotes are dropped from simple values that do not need them, and conditions joined by AND are sorted.
+ * Nothing else is changed: field names, values and the ORDER BY clause keep their case and order.
+ * A query that cannot be tokenized, such as one with an unterminated string, is only trimmed.
+ */
+class JQLCanonicalForm {
+
+    private static final Pattern TOKEN
+            = Pattern.compile("\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*'|!=|!~|>=|<=|[=<>~(),]|[^\\s=!<>~(),\"']+)");
+    private static final Pattern SIMPLE_VALUE = Pattern.compile("[A-Za-z0-9_]+(?:[-.][A-Za-z0-9_]+)*");
+    /**
+     * Quoted numbers stay quoted, because JIRA reads an unquoted number as an id for fields such as versions.
+     */
+    private static final Pattern NUMERIC_VALUE = Pattern.compile("[0-9]+(?:\\.[0-9]+)*");
+
+    private static final Set<String> KEYWORDS = ImmutableSet.of(
+            "and", "or", "not", "in", "is", "empty", "null", "order", "by", "asc", "desc",
+            "was", "changed", "from", "to", "on", "before", "after", "during");
+
+    /**
+     * Words JIRA reserves, which must stay quoted when used as values.
+     */
+    private static final Set<String> RESERVED_WORDS = ImmutableSet.<String>builder().add(
+            "a", "an", "abort", "access", "add", "after", "alias", "all", "alter", "and", "any", "as", "asc", "audit",
+            "avg", "before", "begin", "between", "boolean", "break", "by", "byte", "catch", "cf", "changed", "char",
+            "character", "check", "checkpoint", "collate", "collation", "column", "commit", "connect", "continue",
+            "count", "create", "current", "date", "decimal", "declare", "decrement", "default", "defaults", "define",
+            "delete", "delimiter", "desc", "difference", "distinct", "divide", "do", "double", "drop", "during",
+            "else", "empty", "encoding", "end", "equals", "escape", "exclusive", "exec", "execute", "exists",
+            "explain", "false", "fetch", "file", "field", "first", "float", "for", "from", "function", "go", "goto",
+            "grant", "greater", "group", "having", "identified", "if", "immediate", "in", "increment", "index",
+            "initial", "inner", "inout", "input", "insert", "int", "integer", "intersect", "intersection", "into",
+            "is", "isempty", "isnull", "join", "last", "left", "less", "like", "limit", "lock", "long", "max", "min",
+            "minus", "mode", "modify", "modulo", "more", "multiply", "next", "noaudit", "not", "notin", "nowait",
+            "null", "number", "object", "of", "on", "option", "or", "order", "outer", "output", "power", "previous",
+            "prior", "privileges", "public", "raise", "raw", "remainder", "rename", "resource", "return", "returns",
+            "revoke", "right", "row", "rowid", "rownum", "rows", "select", "session", "set", "share", "size", "sqrt",
+            "start", "strict", "string", "subtract", "sum", "synonym", "table", "then", "to", "trans", "transaction",
+            "trigger", "true", "uid", "union", "unique", "update", "user", "validate", "values", "view", "was",
+            "when", "whenever", "where", "while", "with").build();
+
+    private JQLCanonicalForm() {}
+
+    static String of(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens == null) {
+            return query.trim();
+        }
+        int orderBy = orderByPosition(tokens);
+        List<String> where = tokens.subList(0, orderBy);
+        List<String> order = tokens.subList(orderBy, tokens.size());
+        String canonicalWhere = where.isEmpty() ? "" : disjunction(where);
+        String canonicalOrder = order.isEmpty() ? "" : render(order);
+        if (canonicalWhere == null) {
+            return query.trim();
+        }
+        return (canonicalWhere + " " + canonicalOrder).trim();
+    }
+
+    /**
+     * Tokens are returned with keywords in upper case and simple values unquoted.
+     */
+    private static List<String> tokenize(String query) {
+        List<String> tokens = Lists.newArrayList();
+        Matcher token = TOKEN.matcher(query);
+        int end = 0;
+        while (end < query.length() && token.find(end) && token.start() == end) {
+            tokens.add(canonicalToken(token.group(1)));
+            end = token.end();
+        }
+        return query.substring(end).trim().isEmpty() ? tokens : null;
+    }
+
+    private static String canonicalToken(String token) {
+        String lowerCase = token.toLowerCase(Locale.ENGLISH);
+        if (KEYWORDS.contains(lowerCase)) {
+            return token.toUpperCase(Locale.ENGLISH);
+        }
+        if (token.length() >= 2 && (token.charAt(0) == '"' || token.charAt(0) == '\'')) {
+            String content = token.substring(1, token.length() - 1);
+            if (SIMPLE_VALUE.matcher(content).matches() && !NUMERIC_VALUE.matcher(content).matches()
+                    && !RESERVED_WORDS.contains(content.toLowerCase(Locale.ENGLISH))) {
+                return content;
+            }
+            if (token.charAt(0) == '\'' && !content.contains("\"")) {
+                return "\"" + content + "\"";
+            }
+        }
+        return token;
+    }
+
+    private static int orderByPosition(List<String> tokens) {
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            if (tokens.get(i).equals("ORDER") && tokens.get(i + 1).equals("BY")) {
+                return i;
+            }
+        }
+        return tokens.size();
+    }
+
+    /**
+     * Conditions joined by OR keep their order, while the conditions joined by AND within each of them are sorted.
+     *
+     * @return the canonical form, or null if the parentheses are unbalanced
+     */
+    private static String disjunction(List<String> tokens) {
+        List<String> alternatives = Lists.newArrayList();
+        for (List<String> alternative : splitAt("OR", tokens)) {
+            List<String> conditions = Lists.newArrayList();
+            for (List<String> condition : splitAt("AND", alternative)) {
+                String canonicalCondition = condition(condition);
+                if (canonicalCondition == null) {
+                    return null;
+                }
+                conditions.add(canonicalCondition);
+            }
+            Collections.sort(conditions);
+            alternatives.add(Joiner.on(" AND ").join(conditions));
+        }
+        return Joiner.on(" OR ").join(alternatives);
+    }
+
+    private static String condition(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        int start = tokens.get(0).equals("NOT") ? 1 : 0;
+        String prefix = (start == 1) ? "NOT " : "";
+        if (tokens.size() > start + 1 && tokens.get(start).equals("(")
+                && closingParenthesis(tokens, start) == tokens.size() - 1) {
+            String group = disjunction(tokens.subList(start + 1, tokens.size() - 1));
+            return (group == null) ? null : prefix + "(" + group + ")";
+        }
+        return (depthAfter(tokens) == 0) ? render(tokens) : null;
+    }
+
+    private static List<List<String>> splitAt(String keyword, List<String> tokens) {
+        List<List<String>> parts = Lists.newArrayList();
+        int depth = 0;
+        int partStart = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")")) {
+                depth--;
+            } else if (depth == 0 && token.equals(keyword)) {
+                parts.add(tokens.subList(partStart, i));
+                partStart = i + 1;
+            }
+        }
+        parts.add(tokens.subList(partStart, tokens.size()));
+        return parts;
+    }
+
+    private static int closingParenthesis(List<String> tokens, int opening) {
+        int depth = 0;
+        for (int i = opening; i < tokens.size(); i++) {
+            if (tokens.get(i).equals("(")) {
+                depth++;
+            } else if (tokens.get(i).equals(")") && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int depthAfter(List<String> tokens) {
+        int depth = 0;
+        for (String token : tokens) {
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")")) {
+                depth--;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Tokens are separated by single spaces, except inside parentheses, before commas and between a function name
+     * and its arguments.
+     */
+    private static String render(List<String> tokens) {
+        StringBuilder rendered = new StringBuilder();
+        String previous = null;
+        for (String token : tokens) {
+            boolean attached = previous == null
+                    || previous.equals("(")
+                    || token.equals(")")
+                    || token.equals(",")
+                    || (token.equals("(") && isFunctionName(previous));
+            rendered.append(attached ? "" : " ").append(token);
+            previous = token;
+        }
+        return rendered.toString();
+    }
+
+    private static boolean isFunctionName(String token) {
+        return Character.isLetter(token.charAt(0)) && !KEYWORDS.contains(token.toLowerCase(Locale.ENGLISH));
+    }
+}
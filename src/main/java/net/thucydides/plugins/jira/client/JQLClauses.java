@@ -0,0 +1,116 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helps to build JQL queries by adding conditions to existing queries.
+ */
+class JQLClauses {
+
+    private static final Pattern QUOTED_OR_ORDER_BY
+            = Pattern.compile("(?is)\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*'|\\border\\s+by\\b");
+    private static final Pattern ORDER_BY_KEYWORDS = Pattern.compile("(?is)^order\\s+by\\s*");
+
+    private JQLClauses() {}
+
+    /**
+     * Add a condition to a query, keeping any ORDER BY clause at the end.
+     */
+    static String restrict(String query, String condition) {
+        String where = whereClauseOf(query);
+        int orderByStart = orderByStart(query);
+        String order = (orderByStart < 0) ? "" : " " + query.substring(orderByStart);
+        if (where.trim().isEmpty()) {
+            return condition + order;
+        }
+        return "(" + where + ") AND " + condition + order;
+    }
+
+    /**
+     * Does the query specify the order of its results?
+     */
+    static boolean isOrdered(String query) {
+        return orderByStart(query) >= 0;
+    }
+
+    /**
+     * The conditions of a query, without its ORDER BY clause.
+     */
+    static String whereClauseOf(String query) {
+        int orderByStart = orderByStart(query);
+        return (orderByStart < 0) ? query : query.substring(0, orderByStart).trim();
+    }
+
+    /**
+     * The sort fields of a query's ORDER BY clause, or an empty string if it has none.
+     */
+    static String orderByFieldsOf(String query) {
+        int orderByStart = orderByStart(query);
+        if (orderByStart < 0) {
+            return "";
+        }
+        return ORDER_BY_KEYWORDS.matcher(query.substring(orderByStart)).replaceFirst("").trim();
+    }
+
+    /**
+     * Where the ORDER BY clause starts, or -1 if there is none. Quoted strings are skipped over, so that
+     * a value such as {@code summary ~ "order by date"} is not taken for the clause.
+     */
+    private static int orderByStart(String query) {
+        Matcher match = QUOTED_OR_ORDER_BY.matcher(query);
+        while (match.find()) {
+            char first = query.charAt(match.start());
+            if (first != '"' && first != '\'') {
+                return match.start();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A page of an unordered query for keyset pagination: the issues are sorted by id, and only those after
+     * the last issue already seen are requested, so that JIRA never has to skip over earlier results.
+     */
+    static String afterId(String query, Optional<Long> lastSeenId) {
+        String page = lastSeenId.isPresent() ? restrict(query, "id > " + lastSeenId.get()) : query;
+        return (page.trim() + " ORDER BY id ASC").trim();
+    }
+
+    /**
+     * A condition matching the issues of a project.
+     */
+    static String projectIs(String project) {
+        return "project = \"" + project + "\"";
+    }
+
+    /**
+     * A condition matching the issues with any of the given keys.
+     */
+    static String keyIn(List<String> keys) {
+        return "key in (" + keyList(keys) + ")";
+    }
+
+    /**
+     * Issue keys, quoted and separated by commas, for use in an IN condition.
+     */
+    static String keyList(List<String> keys) {
+        StringBuilder keyList = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            keyList.append(i == 0 ? "" : ",").append('"').append(keys.get(i)).append('"');
+        }
+        return keyList.toString();
+    }
+
+    /**
+     * A condition matching the issues updated in the last few minutes.
+     * JIRA reads a relative date against its own clock, so neither the local clock nor the JIRA user's
+     * time zone affects which issues are found.
+     */
+    static String updatedWithinMinutes(long minutes) {
+        return "updated >= \"-" + minutes + "m\"";
+    }
+}
@@ -0,0 +1,191 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A JQL query made only of equality conditions joined by AND, such as
+ * {@code project = DEMO AND labels = urgent AND fixVersion in ("1.0", "1.1")}, optionally followed by
+ * an ORDER BY clause. Queries like these can be answered from the cached results of a broader query.
+ * Field names and values are compared without regard to case.
+ */
+class JQLFilter {
+
+    private static final Pattern TOKEN = Pattern.compile("\\s*(\"((?:[^\"\\\\]|\\\\.)*)\"|'((?:[^'\\\\]|\\\\.)*)'|[=(),]|[^\\s=(),\"']+)");
+
+    static final String PROJECT = "project";
+    static final String KEY = "key";
+    static final String ISSUE_TYPE = "issuetype";
+    static final String LABELS = "labels";
+    static final String FIX_VERSION = "fixversion";
+
+    private static final Map<String, String> FIELD_ALIASES = ImmutableMap.<String, String>builder()
+            .put("project", PROJECT)
+            .put("key", KEY)
+            .put("issuekey", KEY)
+            .put("issuetype", ISSUE_TYPE)
+            .put("type", ISSUE_TYPE)
+            .put("labels", LABELS)
+            .put("fixversion", FIX_VERSION)
+            .build();
+
+    private final Map<String, Set<String>> conditions;
+    private final String orderBy;
+
+    private JQLFilter(Map<String, Set<String>> conditions, String orderBy) {
+        this.conditions = ImmutableMap.copyOf(conditions);
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * @param customFields the names of the custom fields that may appear in conditions, as quoted field names
+     * @return the filter, or nothing if the query uses anything beyond equality conditions joined by AND
+     */
+    static Optional<JQLFilter> parse(String query, List<String> customFields) {
+        String where = JQLClauses.whereClauseOf(query);
+        String orderBy = normalized(JQLClauses.orderByFieldsOf(query).replaceAll("\\s+", " "));
+
+        List<Token> tokens = tokenize(where);
+        if (tokens == null) {
+            return Optional.absent();
+        }
+        Map<String, Set<String>> conditions = Maps.newHashMap();
+        int next = 0;
+        while (next < tokens.size()) {
+            if (next > 0) {
+                if (!tokens.get(next).isKeyword("and")) {
+                    return Optional.absent();
+                }
+                next++;
+            }
+            if (next + 2 >= tokens.size()) {
+                return Optional.absent();
+            }
+            Optional<String> field = fieldNamed(tokens.get(next), customFields);
+            if (!field.isPresent()) {
+                return Optional.absent();
+            }
+            Token operator = tokens.get(next + 1);
+            Set<String> values = Sets.newHashSet();
+            if (operator.isSymbol("=")) {
+                if (!tokens.get(next + 2).isValue()) {
+                    return Optional.absent();
+                }
+                values.add(normalized(tokens.get(next + 2).text));
+                next += 3;
+            } else if (operator.isKeyword("in") && tokens.get(next + 2).isSymbol("(")) {
+                next += 3;
+                while (next < tokens.size() && tokens.get(next).isValue()) {
+                    values.add(normalized(tokens.get(next).text));
+                    next++;
+                    if (next < tokens.size() && tokens.get(next).isSymbol(",")) {
+                        next++;
+                    }
+                }
+                if (values.isEmpty() || next >= tokens.size() || !tokens.get(next).isSymbol(")")) {
+                    return Optional.absent();
+                }
+                next++;
+            } else {
+                return Optional.absent();
+            }
+            if (conditions.containsKey(field.get())) {
+                values.retainAll(conditions.get(field.get()));
+            }
+            conditions.put(field.get(), ImmutableSet.copyOf(values));
+        }
+        return Optional.of(new JQLFilter(conditions, orderBy));
+    }
+
+    private static Optional<String> fieldNamed(Token token, List<String> customFields) {
+        if (!token.isValue()) {
+            return Optional.absent();
+        }
+        String field = normalized(token.text);
+        if (!token.quoted && FIELD_ALIASES.containsKey(field)) {
+            return Optional.of(FIELD_ALIASES.get(field));
+        }
+        for (String customField : customFields) {
+            if (normalized(customField).equals(field)) {
+                return Optional.of(customField);
+            }
+        }
+        return Optional.absent();
+    }
+
+    private static List<Token> tokenize(String where) {
+        List<Token> tokens = Lists.newArrayList();
+        Matcher token = TOKEN.matcher(where);
+        int end = 0;
+        while (end < where.length() && token.find(end) && token.start() == end) {
+            if (token.group(2) != null) {
+                tokens.add(new Token(token.group(2).replaceAll("\\\\(.)", "$1"), true));
+            } else if (token.group(3) != null) {
+                tokens.add(new Token(token.group(3).replaceAll("\\\\(.)", "$1"), true));
+            } else {
+                tokens.add(new Token(token.group(1).trim(), false));
+            }
+            end = token.end();
+        }
+        return where.substring(end).trim().isEmpty() ? tokens : null;
+    }
+
+    static String normalized(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+    public Map<String, Set<String>> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * A broader filter covers a narrower one if every issue matching the narrower filter also matches
+     * the broader one, and both ask for the same order. A query with no ORDER BY clause is only covered by
+     * another query with none, as JIRA sorts the results of each in its own way.
+     */
+    public boolean covers(JQLFilter narrower) {
+        if (!narrower.orderBy.equals(orderBy)) {
+            return false;
+        }
+        for (Map.Entry<String, Set<String>> condition : conditions.entrySet()) {
+            Set<String> narrowerValues = narrower.conditions.get(condition.getKey());
+            if (narrowerValues == null || !condition.getValue().containsAll(narrowerValues)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Token {
+        final String text;
+        final boolean quoted;
+
+        Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+
+        boolean isSymbol(String symbol) {
+            return !quoted && text.equals(symbol);
+        }
+
+        boolean isKeyword(String keyword) {
+            return !quoted && text.equalsIgnoreCase(keyword);
+        }
+
+        boolean isValue() {
+            return quoted || !(text.length() == 1 && "=(),".contains(text));
+        }
+    }
+}
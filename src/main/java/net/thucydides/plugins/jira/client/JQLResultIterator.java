@@ -0,0 +1,101 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over the results of a JQL query, downloading the result pages lazily.
+ * At most two pages are held at any time: the one being read, and the next one, which is fetched in the background.
+ * With keyset pagination, each page is requested as the issues after the last id of the previous page.
+ */
+class JQLResultIterator extends AbstractIterator<IssueSummary> {
+
+    private final JerseyJiraClient jiraClient;
+    private final ExecutorService executor;
+    private final String query;
+    private final FieldProjection projection;
+    private final boolean inIdOrder;
+
+    private Iterator<IssueSummary> currentPage;
+    private Future<SearchResultPage> nextPage;
+
+    JQLResultIterator(JerseyJiraClient jiraClient, ExecutorService executor,
+                      String query, FieldProjection projection) {
+        this.jiraClient = jiraClient;
+        this.executor = executor;
+        this.query = query;
+        this.projection = projection;
+        this.inIdOrder = jiraClient.usesKeysetPagination(query);
+        this.nextPage = executor.submit(new PageLoader(0, Optional.<Long>absent()));
+    }
+
+    @Override
+    protected IssueSummary computeNext() {
+        while (currentPage == null || !currentPage.hasNext()) {
+            if (nextPage == null) {
+                return endOfData();
+            }
+            SearchResultPage page = waitFor(nextPage);
+            nextPage = isLastPage(page) ? null : executor.submit(nextPageLoaderAfter(page));
+            currentPage = page.getIssues().iterator();
+        }
+        return currentPage.next();
+    }
+
+    private boolean isLastPage(SearchResultPage page) {
+        if (inIdOrder) {
+            return JerseyJiraClient.isLastPageInIdOrder(page);
+        }
+        return page.getIssues().isEmpty() || page.getStartAt() + page.getIssues().size() >= page.getTotal();
+    }
+
+    private PageLoader nextPageLoaderAfter(SearchResultPage page) {
+        if (inIdOrder) {
+            return new PageLoader(0, JerseyJiraClient.lastIdOn(page));
+        }
+        return new PageLoader(page.getStartAt() + page.getIssues().size(), Optional.<Long>absent());
+    }
+
+    private SearchResultPage waitFor(Future<SearchResultPage> page) {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JIRAQueryError("Could not load JQL results for " + query, e.getCause());
+        } catch (InterruptedException e) {
+            page.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new JIRAQueryError("Interrupted while loading JQL results for " + query, e);
+        }
+    }
+
+    /**
+     * Loads a page of the size currently chosen for the server, as the size may change during the iteration.
+     */
+    private class PageLoader implements Callable<SearchResultPage> {
+        private final int startAt;
+        private final Optional<Long> lastSeenId;
+
+        PageLoader(int startAt, Optional<Long> lastSeenId) {
+            this.startAt = startAt;
+            this.lastSeenId = lastSeenId;
+        }
+
+        @Override
+        public SearchResultPage call() throws Exception {
+            if (inIdOrder) {
+                return jiraClient.loadPageAfter(query, projection, lastSeenId);
+            }
+            return jiraClient.loadPage(query, projection, startAt);
+        }
+    }
+}
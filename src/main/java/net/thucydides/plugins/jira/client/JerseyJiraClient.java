@@ -1,32 +1,70 @@
 package net.thucydides.plugins.jira.client;
 
-import com.beust.jcommander.internal.Maps;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.thucydides.plugins.jira.domain.IssueSummary;
 import net.thucydides.plugins.jira.domain.Version;
 import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.model.CascadingSelectOptions;
 import net.thucydides.plugins.jira.model.CustomField;
-import org.glassfish.jersey.client.filter.HttpBasicAuthFilter;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.EMPTY_LIST;
 
@@ -36,9 +74,6 @@ import static java.util.Collections.EMPTY_LIST;
 @SuppressWarnings("unchecked")
 public class JerseyJiraClient {
 
-    private static final String REST_SEARCH = "rest/api/latest/search";
-    private static final String VERSIONS_SEARCH = "rest/api/latest/project/%s/versions";
-    private static final int REDIRECT_REQUEST = 302;
     private static final String DEFAULT_ISSUE_TYPE = "Bug";
     private final String url;
     private final String username;
@@ -46,15 +81,34 @@ public class JerseyJiraClient {
     private final int batchSize;
     private final String project;
     private final List<String> customFields;
-    private Map<String, CustomField> customFieldsIndex;
-    private Map<String, String> customFieldNameIndex;
+    private final JiraConnectionSettings connectionSettings;
+    private final JiraCacheSettings cacheSettings;
+    private final JiraRestTransport transport;
+    private final ExecutorService searchExecutor;
+    private final ExecutorService refreshExecutor;
+    private final ListeningExecutorService asyncExecutor;
     private String metadataIssueType;
-    private LoadingCache<String , Optional<IssueSummary>> issueSummaryCache;
-    private LoadingCache<String , List<IssueSummary>> issueQueryCache;
+    private LoadingCache<ProjectedLookup, Optional<IssueSummary>> issueSummaryCache;
+    private LoadingCache<ProjectedLookup, SyncedQueryResult> issueQueryCache;
+    private final LoadingCache<String, CreateMetadata> createMetadataCache;
+    private final ConditionalGetCache metadataCache;
+    private final Optional<PersistentIssueCache> persistentIssueCache;
+    private final Optional<OffHeapIssueStore> offHeapIssueStore;
+    private final LocalQueryEngine localQueries;
+    private final Optional<ProjectPrefetch> projectPrefetch;
+    private final PageSizer pageSizes;
+    private final InFlightLoads<ProjectedLookup, Optional<IssueSummary>> keyLoads;
+    private final InFlightLoads<ProjectedLookup, List<IssueSummary>> queryLoads;
+    private final AtomicInteger connectionUsers;
+    private final AtomicInteger fieldSetUsers;
+    private final ConcurrentMap<List<String>, JerseyJiraClient> clientsByFieldSet;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(JerseyJiraClient.class);
 
     private final static int DEFAULT_BATCH_SIZE = 100;
+    private final static int KEYS_PER_SEARCH = 100;
+    private final static int MAX_GET_QUERY_LENGTH = 2000;
     private final static int OK = 200;
 
     public JerseyJiraClient(String url, String username, String password, String project) {
@@ -70,6 +124,25 @@ public class JerseyJiraClient {
                             String project,
                             String metadataIssueType,
                             List<String> customFields) {
+        this(url, username, password, batchSize, project, metadataIssueType, customFields,
+             JiraConnectionSettings.defaults());
+    }
+
+    public JerseyJiraClient(String url, String username, String password, int batchSize,
+                            String project,
+                            String metadataIssueType,
+                            List<String> customFields,
+                            JiraConnectionSettings connectionSettings) {
+        this(url, username, password, batchSize, project, metadataIssueType, customFields,
+             connectionSettings, JiraCacheSettings.defaults());
+    }
+
+    public JerseyJiraClient(String url, String username, String password, int batchSize,
+                            String project,
+                            String metadataIssueType,
+                            List<String> customFields,
+                            JiraConnectionSettings connectionSettings,
+                            JiraCacheSettings cacheSettings) {
         this.url = url;
         this.username = username;
         this.password = password;
@@ -77,24 +150,215 @@ public class JerseyJiraClient {
         this.project = project;
         this.metadataIssueType = metadataIssueType;
         this.customFields = ImmutableList.copyOf(customFields);
-        this.issueSummaryCache = CacheBuilder.newBuilder()
-                .maximumSize(1000)
-                .build(new FindByKeyLoader(this));
-        this.issueQueryCache = CacheBuilder.newBuilder()
-                .maximumSize(1000)
-                .build(new FindByJQLLoader(this));
+        this.connectionSettings = connectionSettings;
+        this.cacheSettings = cacheSettings;
+        this.transport = new JiraRestTransport(url, username, password, connectionSettings);
+        this.pageSizes = pageSizerFor(batchSize, connectionSettings);
+        this.searchExecutor = searchExecutorFor(connectionSettings);
+        this.refreshExecutor = refreshExecutor();
+        this.asyncExecutor = asyncExecutorFor(connectionSettings);
+        this.issueSummaryCache = cacheSettings.getIssueCachePolicy().cacheBuilder()
+                .build(CacheLoader.asyncReloading(new FindByKeyLoader(this), refreshExecutor));
+        this.issueQueryCache = cacheSettings.getQueryCachePolicy().cacheBuilder()
+                .build(CacheLoader.asyncReloading(new FindByJQLLoader(this), refreshExecutor));
+        this.createMetadataCache = cacheSettings.getCreateMetadataCachePolicy().cacheBuilder()
+                .build(new CreateMetadataLoader(this));
+        this.metadataCache = new ConditionalGetCache(cacheSettings.getMetadataFreshness());
+        this.persistentIssueCache = persistentIssueCacheFor(cacheSettings);
+        this.offHeapIssueStore = offHeapIssueStoreFor(cacheSettings);
+        this.keyLoads = new InFlightLoads<ProjectedLookup, Optional<IssueSummary>>();
+        this.queryLoads = new InFlightLoads<ProjectedLookup, List<IssueSummary>>();
+        this.connectionUsers = new AtomicInteger(1);
+        this.fieldSetUsers = new AtomicInteger(1);
+        this.clientsByFieldSet = new ConcurrentHashMap<List<String>, JerseyJiraClient>();
+        this.clientsByFieldSet.put(this.customFields, this);
+        this.localQueries = new LocalQueryEngine(this.customFields);
+        this.projectPrefetch = projectPrefetchFor(cacheSettings);
+    }
+
+    /**
+     * A client for the same server, user and settings as another, which shares its connection pool, executors
+     * and caches. Cache entries that depend on the custom fields are kept apart by field set, and clients with
+     * the same custom fields also share their persistent cache, off-heap store and project prefetch.
+     * A client for a new field set does not prefetch the project or open an off-heap store of its own:
+     * it keeps its full issues in the shared issue cache, and in its own persistent cache directory if there is one.
+     */
+    private JerseyJiraClient(JerseyJiraClient source, String metadataIssueType, List<String> customFields) {
+        this.url = source.url;
+        this.username = source.username;
+        this.password = source.password;
+        this.batchSize = source.batchSize;
+        this.project = source.project;
+        this.metadataIssueType = metadataIssueType;
+        this.customFields = ImmutableList.copyOf(customFields);
+        this.connectionSettings = source.connectionSettings;
+        this.cacheSettings = source.cacheSettings;
+        this.transport = source.transport;
+        this.pageSizes = source.pageSizes;
+        this.searchExecutor = source.searchExecutor;
+        this.refreshExecutor = source.refreshExecutor;
+        this.asyncExecutor = source.asyncExecutor;
+        this.issueSummaryCache = source.issueSummaryCache;
+        this.issueQueryCache = source.issueQueryCache;
+        this.createMetadataCache = source.createMetadataCache;
+        this.metadataCache = source.metadataCache;
+        this.keyLoads = source.keyLoads;
+        this.queryLoads = source.queryLoads;
+        this.connectionUsers = source.connectionUsers;
+        this.connectionUsers.incrementAndGet();
+        this.clientsByFieldSet = source.clientsByFieldSet;
+        synchronized (clientsByFieldSet) {
+            JerseyJiraClient sameFields = clientsByFieldSet.get(this.customFields);
+            if (sameFields != null) {
+                this.fieldSetUsers = sameFields.fieldSetUsers;
+                this.fieldSetUsers.incrementAndGet();
+                this.persistentIssueCache = sameFields.persistentIssueCache;
+                this.offHeapIssueStore = sameFields.offHeapIssueStore;
+                this.localQueries = sameFields.localQueries;
+                this.projectPrefetch = sameFields.projectPrefetch;
+            } else {
+                this.fieldSetUsers = new AtomicInteger(1);
+                this.persistentIssueCache = persistentIssueCacheFor(cacheSettings);
+                this.offHeapIssueStore = Optional.absent();
+                this.localQueries = new LocalQueryEngine(this.customFields);
+                this.projectPrefetch = Optional.absent();
+                clientsByFieldSet.put(this.customFields, this);
+            }
+        }
     }
 
     public JerseyJiraClient(String url, String username, String password, int batchSize, String project) {
         this(url,username,password,batchSize,project, DEFAULT_ISSUE_TYPE, EMPTY_LIST);
     }
 
+    /**
+     * A client that decodes other custom fields, and shares this client's connections and caches.
+     */
     public JerseyJiraClient usingCustomFields(List<String> customFields) {
-        return new JerseyJiraClient(url, username, password, batchSize, project, metadataIssueType, customFields);
+        return new JerseyJiraClient(this, metadataIssueType, customFields);
     }
 
+    /**
+     * A client that reads field options for another issue type, and shares this client's connections and caches.
+     */
     public JerseyJiraClient usingMetadataIssueType(String metadataIssueType) {
-        return new JerseyJiraClient(url, username, password, batchSize, project, metadataIssueType, customFields);
+        return new JerseyJiraClient(this, metadataIssueType, customFields);
+    }
+
+    public JerseyJiraClient usingConnectionSettings(JiraConnectionSettings connectionSettings) {
+        return new JerseyJiraClient(url, username, password, batchSize, project, metadataIssueType, customFields,
+                                    connectionSettings, cacheSettings);
+    }
+
+    public JerseyJiraClient usingCacheSettings(JiraCacheSettings cacheSettings) {
+        return new JerseyJiraClient(url, username, password, batchSize, project, metadataIssueType, customFields,
+                                    connectionSettings, cacheSettings);
+    }
+
+    /**
+     * Keep full issue lookups in a local directory, so that later builds and forked JVMs can reuse them.
+     */
+    public JerseyJiraClient usingPersistentCache(File directory) {
+        return usingCacheSettings(cacheSettings.withPersistentCache(directory));
+    }
+
+    /**
+     * Issues are stored in a subdirectory for each JIRA server, user and set of custom fields,
+     * as these decide what a full issue lookup returns: users may not see the same issues or fields.
+     */
+    private Optional<PersistentIssueCache> persistentIssueCacheFor(JiraCacheSettings cacheSettings) {
+        if (!cacheSettings.getPersistentCacheDirectory().isPresent()) {
+            return Optional.absent();
+        }
+        String namespace = Hashing.murmur3_32()
+                                  .hashString(serverIdentity() + "|" + Joiner.on(",").join(customFields),
+                                              Charsets.UTF_8)
+                                  .toString();
+        File cacheDirectory = new File(cacheSettings.getPersistentCacheDirectory().get(), namespace);
+        return Optional.of(PersistentIssueCache.inDirectory(cacheDirectory));
+    }
+
+    private Optional<OffHeapIssueStore> offHeapIssueStoreFor(JiraCacheSettings cacheSettings) {
+        if (!cacheSettings.isOffHeapIssueStore()) {
+            return Optional.absent();
+        }
+        if (!cacheSettings.getIssueStoreFile().isPresent()) {
+            return Optional.of(OffHeapIssueStore.inDirectMemory());
+        }
+        try {
+            return Optional.of(OffHeapIssueStore.mappedTo(cacheSettings.getIssueStoreFile().get()));
+        } catch (IOException e) {
+            logger.warn("Could not map the issue store to " + cacheSettings.getIssueStoreFile().get()
+                        + ", using direct memory instead", e);
+            return Optional.of(OffHeapIssueStore.inDirectMemory());
+        }
+    }
+
+    private PageSizer pageSizerFor(int batchSize, JiraConnectionSettings connectionSettings) {
+        if (connectionSettings.getMaxPageSize() <= 0) {
+            return new PageSizer(batchSize, batchSize, batchSize);
+        }
+        return new PageSizer(batchSize, connectionSettings.getMinPageSize(), connectionSettings.getMaxPageSize());
+    }
+
+    private Optional<ProjectPrefetch> projectPrefetchFor(JiraCacheSettings cacheSettings) {
+        if (!cacheSettings.isProjectPrefetch() || project == null) {
+            return Optional.absent();
+        }
+        return Optional.of(ProjectPrefetch.of(this, project, prefetchCheckpointFile()));
+    }
+
+    /**
+     * The prefetch checkpoint is kept with the persistent cache the prefetched issues are stored in.
+     */
+    private Optional<File> prefetchCheckpointFile() {
+        if (!persistentIssueCache.isPresent()) {
+            return Optional.absent();
+        }
+        return Optional.of(new File(persistentIssueCache.get().getDirectory(), "prefetch-" + project + ".properties"));
+    }
+
+    private ExecutorService searchExecutorFor(JiraConnectionSettings connectionSettings) {
+        int threads = Math.max(1, connectionSettings.getSearchParallelism());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             new ThreadFactoryBuilder()
+                                                                     .setDaemon(true)
+                                                                     .setNameFormat("jira-search-%d")
+                                                                     .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The steps of asynchronous loads that may block, and the decoding of their responses, run on these threads.
+     * They are kept apart from the search threads because a step may itself wait for searches, such as those
+     * that revalidate the persistent cache.
+     */
+    private ListeningExecutorService asyncExecutorFor(JiraConnectionSettings connectionSettings) {
+        int threads = Math.max(1, connectionSettings.getSearchParallelism());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             new ThreadFactoryBuilder()
+                                                                     .setDaemon(true)
+                                                                     .setNameFormat("jira-async-%d")
+                                                                     .build());
+        executor.allowCoreThreadTimeOut(true);
+        return MoreExecutors.listeningDecorator(executor);
+    }
+
+    /**
+     * Cache entries due for a refresh are reloaded on this thread, while readers carry on using the old values.
+     */
+    private ExecutorService refreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             new ThreadFactoryBuilder()
+                                                                     .setDaemon(true)
+                                                                     .setNameFormat("jira-refresh-%d")
+                                                                     .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -104,277 +368,1088 @@ public class JerseyJiraClient {
      * @return a list of JIRA issue keys
      */
     public List<IssueSummary> findByJQL(String query) throws JSONException {
+        return findByJQL(query, FieldProjection.ALL);
+    }
+
+    /**
+     * Load the issues matching the specified JQL query, requesting only the fields in the given projection.
+     * Results are cached separately for each projection. Simple queries, made of equality conditions joined by AND,
+     * are answered from the cached results of a broader query with the same projection when there is one.
+     *
+     * @param query A valid JQL query
+     * @param projection the fields and expansions to request
+     */
+    public List<IssueSummary> findByJQL(String query, FieldProjection projection) throws JSONException {
+        foregroundLookupStarted();
         try {
             Preconditions.checkNotNull(query,"JIRA key cannot be null");
-            return issueQueryCache.get(query);
+            ProjectedLookup lookup = ProjectedLookup.ofQuery(query, projection, customFields);
+            Optional<List<IssueSummary>> localResults = answeredLocally(lookup);
+            if (localResults.isPresent()) {
+                return localResults.get();
+            }
+            return issueQueryCache.get(lookup).getIssues();
         } catch (ExecutionException e) {
             throw new JSONException(e.getCause());
         } catch (RuntimeException runtimeException) {
             throw new JSONException(runtimeException.getCause());
+        } finally {
+            foregroundLookupFinished();
+        }
+    }
+
+    /**
+     * Queries that are not cached themselves may still be answered from the cached results of a broader query
+     * loaded with the same field set.
+     */
+    private Optional<List<IssueSummary>> answeredLocally(final ProjectedLookup lookup) {
+        if (issueQueryCache.asMap().containsKey(lookup)) {
+            return Optional.absent();
         }
+        Map<ProjectedLookup, SyncedQueryResult> sameFieldSet
+                = Maps.filterKeys(issueQueryCache.asMap(), new Predicate<ProjectedLookup>() {
+            @Override
+            public boolean apply(ProjectedLookup cachedQuery) {
+                return cachedQuery.getFieldSet().equals(lookup.getFieldSet());
+            }
+        });
+        return localQueries.answer(lookup.getValue(), lookup.getProjection(), sameFieldSet);
+    }
+
+    /**
+     * The form in which a JQL query is cached. Queries that differ only in whitespace, keyword case, operator
+     * spacing, quoting of simple values or the order of conditions joined by AND share a cache entry.
+     */
+    public String canonicalQuery(String query) {
+        return JQLCanonicalForm.of(query);
+    }
+
+    /**
+     * Bring the cached results of a JQL query up to date, downloading only the issues that changed since they were
+     * last loaded. Issues that no longer match the query are dropped. Queries that are not cached yet are loaded
+     * in full.
+     * If the refresh fails, the previous results are kept.
+     *
+     * @param query A valid JQL query
+     */
+    public List<IssueSummary> refreshByJQL(String query) throws JSONException {
+        return refreshByJQL(query, FieldProjection.ALL);
+    }
+
+    public List<IssueSummary> refreshByJQL(String query, FieldProjection projection) throws JSONException {
+        Preconditions.checkNotNull(query,"JQL query cannot be null");
+        ProjectedLookup lookup = ProjectedLookup.ofQuery(query, projection, customFields);
+        SyncedQueryResult previous = issueQueryCache.getIfPresent(lookup);
+        if (previous == null) {
+            return findByJQL(query, projection);
+        }
+        try {
+            SyncedQueryResult refreshed = syncByJQL(query, projection, previous);
+            issueQueryCache.put(lookup, refreshed);
+            return refreshed.getIssues();
+        } catch (RuntimeException e) {
+            logger.warn("Could not refresh the results of " + query, e);
+            return previous.getIssues();
+        } catch (JSONException e) {
+            logger.warn("Could not refresh the results of " + query, e);
+            return previous.getIssues();
+        }
+    }
+
+    /**
+     * Incrementally refresh every cached JQL query in the background.
+     */
+    public void refreshCachedQueries() {
+        for (ProjectedLookup lookup : issueQueryCache.asMap().keySet()) {
+            issueQueryCache.refresh(lookup);
+        }
+    }
+
+    protected SyncedQueryResult syncByJQL(String query, FieldProjection projection, SyncedQueryResult previous)
+            throws JSONException {
+        return new IncrementalQuerySync(this, query, projection).syncFrom(previous);
     }
 
     protected List<IssueSummary> loadByJQL(String query) throws JSONException {
+        return loadByJQL(query, FieldProjection.ALL);
+    }
 
-        int total = countByJQL(query);
+    /**
+     * The first page shows how many issues the server actually returns per page, which may be fewer than were
+     * asked for. The remaining pages are then requested in parallel at that size, and any page that still comes
+     * back short is completed before moving on, so that no issue is skipped.
+     */
+    protected List<IssueSummary> loadByJQL(String query, FieldProjection projection) throws JSONException {
+
+        if (usesKeysetPagination(query)) {
+            List<IssueSummary> issues = loadInIdOrder(query, projection);
+            cacheByKey(issues, projection);
+            return issues;
+        }
+        SearchResultPage firstPage = loadPage(query, projection, 0);
+        int pageSize = firstPage.getIssues().size();
+
+        List<Future<SearchResultPage>> pages = Lists.newArrayList();
+        for(int startAt = pageSize; pageSize > 0 && startAt < firstPage.getTotal(); startAt = startAt + pageSize) {
+            pages.add(searchExecutor.submit(new SearchPageLoader(this, query, projection, startAt, pageSize)));
+        }
+        List<IssueSummary> issues = Lists.newArrayList(firstPage.getIssues());
+        for(SearchResultPage page : waitForAll(pages)) {
+            issues.addAll(page.getIssues());
+            issues.addAll(remainderOf(page, pageSize, query, projection));
+        }
+        cacheByKey(issues, projection);
+        return issues;
+    }
 
+    private List<IssueSummary> loadInIdOrder(String query, FieldProjection projection) throws JSONException {
         List<IssueSummary> issues = Lists.newArrayList();
-        int startAt = 0;
-        while(issues.size() < total) {
+        SearchResultPage page = loadPageAfter(query, projection, Optional.<Long>absent());
+        issues.addAll(page.getIssues());
+        while (!isLastPageInIdOrder(page)) {
+            page = loadPageAfter(query, projection, lastIdOn(page));
+            issues.addAll(page.getIssues());
+        }
+        return issues;
+    }
+
+    boolean usesKeysetPagination(String query) {
+        return connectionSettings.isKeysetPagination() && !JQLClauses.isOrdered(query);
+    }
+
+    /**
+     * Load the page of issues, in id order, that follows the issue with the given id.
+     * The total reported with the page counts only the issues from there on.
+     */
+    SearchResultPage loadPageAfter(String query, FieldProjection projection, Optional<Long> lastSeenId)
+            throws JSONException {
+        return loadPage(JQLClauses.afterId(query, lastSeenId), projection, 0);
+    }
 
-            String jsonResponse = getJSONResponse(query, startAt);
+    static boolean isLastPageInIdOrder(SearchResultPage page) {
+        return page.getIssues().isEmpty() || page.getIssues().size() >= page.getTotal();
+    }
 
-            JSONObject responseObject = new JSONObject(jsonResponse);
-            JSONArray issueEntries = (JSONArray) responseObject.get("issues");
-            for (int i = 0; i < issueEntries.length(); i++) {
-                JSONObject issueObject = issueEntries.getJSONObject(i);
-                issues.add(convertToIssueSummary(issueObject));
+    static Optional<Long> lastIdOn(SearchResultPage page) {
+        return Optional.of(page.getIssues().get(page.getIssues().size() - 1).getId());
+    }
+
+    /**
+     * The issues missing from a page that came back with fewer issues than were asked for.
+     */
+    private List<IssueSummary> remainderOf(SearchResultPage page, int pageSize, String query,
+                                           FieldProjection projection) throws JSONException {
+        List<IssueSummary> remainder = Lists.newArrayList();
+        int pageEnd = Math.min(page.getStartAt() + pageSize, page.getTotal());
+        int loaded = page.getStartAt() + page.getIssues().size();
+        SearchResultPage nextPart = page;
+        while (!nextPart.getIssues().isEmpty() && loaded < pageEnd) {
+            nextPart = loadPage(query, projection, loaded, pageEnd - loaded);
+            remainder.addAll(nextPart.getIssues());
+            loaded += nextPart.getIssues().size();
+        }
+        return remainder;
+    }
+
+    /**
+     * Issues found by a search are also cached by key, so that looking one of them up with the same projection
+     * needs no request. Both caches then hold the same instance.
+     * Issues kept in the off-heap store are already found by key there, once the query results are stored.
+     */
+    private void cacheByKey(List<IssueSummary> issues, FieldProjection projection) {
+        if (offHeapStoreFor(projection).isPresent()) {
+            return;
+        }
+        for(IssueSummary issue : issues) {
+            issueSummaryCache.put(new ProjectedLookup(issue.getKey(), projection, customFields), Optional.of(issue));
+        }
+    }
+
+    /**
+     * The results of a query as they are to be cached: fully loaded issues are moved to the off-heap store
+     * if there is one, and the cache only holds a view of them.
+     */
+    SyncedQueryResult syncedResultOf(List<IssueSummary> issues, FieldProjection projection, long syncedAt) {
+        Optional<OffHeapIssueStore> store = offHeapStoreFor(projection);
+        if (store.isPresent()) {
+            return SyncedQueryResult.ofReadOnlyView(store.get().viewOf(issues), syncedAt);
+        }
+        return new SyncedQueryResult(issues, syncedAt);
+    }
+
+    private Optional<OffHeapIssueStore> offHeapStoreFor(FieldProjection projection) {
+        return projection.equals(FieldProjection.ALL) ? offHeapIssueStore : Optional.<OffHeapIssueStore>absent();
+    }
+
+    /**
+     * Iterate over the issues matching a JQL query without loading them all into memory.
+     * Result pages are requested as the iteration advances, and the query cache is not used.
+     *
+     * @param query A valid JQL query
+     */
+    public Iterator<IssueSummary> iterateByJQL(String query) {
+        return iterateByJQL(query, FieldProjection.ALL);
+    }
+
+    /**
+     * Iterate over the issues matching a JQL query, requesting only the fields in the given projection.
+     */
+    public Iterator<IssueSummary> iterateByJQL(String query, FieldProjection projection) {
+        Preconditions.checkNotNull(query,"JQL query cannot be null");
+        return new JQLResultIterator(this, searchExecutor, query, projection);
+    }
+
+    /**
+     * Pass each issue matching a JQL query to a visitor, one page at a time.
+     *
+     * @param query A valid JQL query
+     * @param visitor receives each issue in the order returned by JIRA
+     */
+    public void visitByJQL(String query, IssueVisitor visitor) {
+        visitByJQL(query, FieldProjection.ALL, visitor);
+    }
+
+    public void visitByJQL(String query, FieldProjection projection, IssueVisitor visitor) {
+        Iterator<IssueSummary> issues = iterateByJQL(query, projection);
+        while (issues.hasNext()) {
+            visitor.visit(issues.next());
+        }
+    }
+
+    private <T> List<T> waitForAll(List<Future<T>> tasks) throws JSONException {
+        List<T> results = Lists.newArrayList();
+        try {
+            for(Future<T> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancelAll(tasks);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            startAt = startAt + getBatchSize();
+            throw new JSONException(e.getCause());
+        } catch (InterruptedException e) {
+            cancelAll(tasks);
+            Thread.currentThread().interrupt();
+            throw new JSONException(e);
         }
+    }
 
-        return issues;
+    private <T> void cancelAll(List<Future<T>> tasks) {
+        for(Future<T> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Load one page of search results, of the size currently chosen for this server.
+     * The first page also tells us how many issues match the query in total, so no separate count request is needed.
+     * The server may return fewer issues than were asked for, so the next page starts after the issues returned.
+     */
+    protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt) throws JSONException {
+        return loadPage(query, projection, startAt, pageSizes.pageSize());
+    }
+
+    protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt, int maxResults)
+            throws JSONException {
+        long requestedAt = System.currentTimeMillis();
+        return searchPageIn(searchInvocation(query, projection, startAt, maxResults).invoke(),
+                            projection, startAt, maxResults, requestedAt);
+    }
+
+    /**
+     * Each page read is also used to tune the size of later pages.
+     */
+    private SearchResultPage searchPageIn(Response response, FieldProjection projection, int startAt,
+                                          int maxResults, long requestedAt) throws JSONException {
+        if (isEmpty(response)) {
+            response.close();
+            return SearchResultPage.empty(startAt);
+        }
+        checkValid(response);
+        CountingInputStream body = new CountingInputStream(entityStreamOf(response));
+        SearchResultPage page = responseDecoder(projection).readSearchPage(body, startAt, maxResults);
+        pageSizes.pageLoaded(maxResults, page, System.currentTimeMillis() - requestedAt, body.getCount());
+        return page;
     }
 
     public List<Version> findVersionsForProject(String projectName) throws JSONException {
-        String versionData = getJSONProjectVersions(projectName);
-        return convertJSONVersions(versionData);
+        WebTarget target = transport.versionsTarget(projectName);
+        return versionsIn(readRevalidatedResource(target));
+    }
+
+    private List<Version> versionsIn(Optional<byte[]> body) throws JSONException {
+        if (!body.isPresent()) {
+            handleConfigurationError("Service not found (404) - try checking the JIRA URL?");
+        }
+        return JiraResponseDecoder.withoutCustomFields().readVersions(new ByteArrayInputStream(body.get()));
+    }
+
+    /**
+     * Load an issue by key without blocking the calling thread.
+     * Concurrent lookups of the same issue share a single request, and the result is cached as for
+     * {@link #findByKey(String)}. Cancelling the returned future aborts the request once every caller sharing it
+     * has cancelled.
+     */
+    public ListenableFuture<Optional<IssueSummary>> findByKeyAsync(String key) {
+        return findByKeyAsync(key, FieldProjection.ALL);
+    }
+
+    public ListenableFuture<Optional<IssueSummary>> findByKeyAsync(final String key, final FieldProjection projection) {
+        Preconditions.checkNotNull(key,"JIRA key cannot be null");
+        final ProjectedLookup lookup = new ProjectedLookup(key, projection, customFields);
+        final Optional<OffHeapIssueStore> store = offHeapStoreFor(projection);
+        if (store.isPresent() && store.get().contains(key)) {
+            return Futures.immediateFuture(store.get().get(key));
+        }
+        Optional<IssueSummary> cachedIssue = store.isPresent() ? null : issueSummaryCache.getIfPresent(lookup);
+        if (cachedIssue != null) {
+            return Futures.immediateFuture(cachedIssue);
+        }
+        return keyLoads.join(lookup, new Callable<ListenableFuture<Optional<IssueSummary>>>() {
+            @Override
+            public ListenableFuture<Optional<IssueSummary>> call() throws Exception {
+                return Futures.transform(loadByKeyAsync(key, projection),
+                                         new Function<Optional<IssueSummary>, Optional<IssueSummary>>() {
+                    @Override
+                    public Optional<IssueSummary> apply(Optional<IssueSummary> issue) {
+                        if (!store.isPresent()) {
+                            issueSummaryCache.put(lookup, issue);
+                        } else if (issue.isPresent()) {
+                            store.get().put(issue.get());
+                        }
+                        return issue;
+                    }
+                }, asyncExecutor);
+            }
+        });
     }
 
-    private List<Version> convertJSONVersions(String versionData) throws JSONException {
-        List<Version> versions = Lists.newArrayList();
+    /**
+     * Load the issues matching a JQL query without blocking the calling thread.
+     * The result pages are requested concurrently. Concurrent calls for the same query share a single load,
+     * and the results are cached as for {@link #findByJQL(String)}.
+     */
+    public ListenableFuture<List<IssueSummary>> findByJQLAsync(String query) {
+        return findByJQLAsync(query, FieldProjection.ALL);
+    }
 
-        JSONArray versionEntries = new JSONArray(versionData);
-        for (int i = 0; i < versionEntries.length(); i++) {
-            JSONObject issueObject = versionEntries.getJSONObject(i);
-            versions.add(convertToVersion(issueObject));
+    public ListenableFuture<List<IssueSummary>> findByJQLAsync(final String query, final FieldProjection projection) {
+        Preconditions.checkNotNull(query,"JQL query cannot be null");
+        final ProjectedLookup lookup = ProjectedLookup.ofQuery(query, projection, customFields);
+        SyncedQueryResult cachedResult = issueQueryCache.getIfPresent(lookup);
+        if (cachedResult != null) {
+            return Futures.immediateFuture(cachedResult.getIssues());
         }
-        return versions;
+        Optional<List<IssueSummary>> localResults = answeredLocally(lookup);
+        if (localResults.isPresent()) {
+            return Futures.immediateFuture(localResults.get());
+        }
+        return queryLoads.join(lookup, new Callable<ListenableFuture<List<IssueSummary>>>() {
+            @Override
+            public ListenableFuture<List<IssueSummary>> call() throws Exception {
+                final long syncedAt = System.currentTimeMillis();
+                return Futures.transform(loadByJQLAsync(query, projection),
+                                         new Function<List<IssueSummary>, List<IssueSummary>>() {
+                    @Override
+                    public List<IssueSummary> apply(List<IssueSummary> issues) {
+                        SyncedQueryResult result = syncedResultOf(issues, projection, syncedAt);
+                        issueQueryCache.put(lookup, result);
+                        return result.getIssues();
+                    }
+                }, asyncExecutor);
+            }
+        });
     }
 
-    public WebTarget buildWebTargetFor(String path) {
-        return restClient().target(url).path(path);
+    /**
+     * Load the versions of a project without blocking the calling thread.
+     */
+    public ListenableFuture<List<Version>> findVersionsAsync(final String projectName) {
+        final WebTarget target = transport.versionsTarget(projectName);
+        Optional<byte[]> freshBody = metadataCache.freshBodyOf(target);
+        if (freshBody.isPresent()) {
+            try {
+                return Futures.immediateFuture(versionsIn(freshBody));
+            } catch (JSONException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+        ListenableFuture<Response> response = transport.submit(metadataCache.conditionalRequest(target).buildGet());
+        return Futures.transform(revalidatedBodyAsync(response, target),
+                                 new AsyncFunction<Optional<byte[]>, List<Version>>() {
+            @Override
+            public ListenableFuture<List<Version>> apply(Optional<byte[]> body) throws Exception {
+                return Futures.immediateFuture(versionsIn(body));
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Reading the disk cache and looking up the custom field ids may block, so they run on the async executor.
+     */
+    private ListenableFuture<Optional<IssueSummary>> loadByKeyAsync(final String key,
+                                                                    final FieldProjection projection) {
+        return offCallerThread(new Callable<ListenableFuture<Optional<IssueSummary>>>() {
+            @Override
+            public ListenableFuture<Optional<IssueSummary>> call() throws Exception {
+                final Optional<PersistentIssueCache> diskCache = persistentCacheFor(projection);
+                if (diskCache.isPresent() && diskCache.get().get(key).isPresent()) {
+                    return Futures.immediateFuture(diskCache.get().get(key));
+                }
+                WebTarget target = withProjection(transport.target(transport.issuePath(key)), projection);
+                return Futures.transform(transport.submit(target.request().buildGet()),
+                                         new AsyncFunction<Response, Optional<IssueSummary>>() {
+                    @Override
+                    public ListenableFuture<Optional<IssueSummary>> apply(Response response) throws Exception {
+                        Optional<IssueSummary> issue = issueIn(resourceIn(response), projection);
+                        if (issue.isPresent() && diskCache.isPresent()) {
+                            diskCache.get().put(issue.get());
+                        }
+                        return Futures.immediateFuture(issue);
+                    }
+                }, asyncExecutor);
+            }
+        });
+    }
+
+    /**
+     * Run a step of an asynchronous load that may block on the async executor, rather than on the calling thread.
+     * The step must not run on the search executor, as it may wait for searches, and they would queue behind it.
+     */
+    private <T> ListenableFuture<T> offCallerThread(Callable<ListenableFuture<T>> step) {
+        try {
+            return Futures.dereference(asyncExecutor.submit(step));
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Pages are sized and completed as for {@link #loadByJQL(String, FieldProjection)}.
+     */
+    private ListenableFuture<List<IssueSummary>> loadByJQLAsync(final String query, final FieldProjection projection) {
+        if (usesKeysetPagination(query)) {
+            return Futures.transform(loadInIdOrderAsync(query, projection, Optional.<Long>absent(),
+                                                        Lists.<IssueSummary>newArrayList()),
+                                     new Function<List<IssueSummary>, List<IssueSummary>>() {
+                @Override
+                public List<IssueSummary> apply(List<IssueSummary> issues) {
+                    cacheByKey(issues, projection);
+                    return issues;
+                }
+            }, asyncExecutor);
+        }
+        return Futures.transform(loadPageAsync(query, projection, 0, pageSizes.pageSize()),
+                                 new AsyncFunction<SearchResultPage, List<IssueSummary>>() {
+            @Override
+            public ListenableFuture<List<IssueSummary>> apply(SearchResultPage firstPage) {
+                final int pageSize = firstPage.getIssues().size();
+                List<ListenableFuture<List<IssueSummary>>> pages = Lists.newArrayList();
+                pages.add(Futures.immediateFuture(firstPage.getIssues()));
+                for(int startAt = pageSize; pageSize > 0 && startAt < firstPage.getTotal(); startAt = startAt + pageSize) {
+                    pages.add(Futures.transform(loadPageAsync(query, projection, startAt, pageSize),
+                                                new AsyncFunction<SearchResultPage, List<IssueSummary>>() {
+                        @Override
+                        public ListenableFuture<List<IssueSummary>> apply(SearchResultPage page) {
+                            return completedAsync(page, pageSize, query, projection);
+                        }
+                    }, asyncExecutor));
+                }
+                return Futures.transform(Futures.allAsList(pages),
+                                         new Function<List<List<IssueSummary>>, List<IssueSummary>>() {
+                    @Override
+                    public List<IssueSummary> apply(List<List<IssueSummary>> pages) {
+                        List<IssueSummary> issues = Lists.newArrayList();
+                        for(List<IssueSummary> page : pages) {
+                            issues.addAll(page);
+                        }
+                        cacheByKey(issues, projection);
+                        return issues;
+                    }
+                }, asyncExecutor);
+            }
+        }, asyncExecutor);
+    }
+
+    private ListenableFuture<List<IssueSummary>> loadInIdOrderAsync(final String query,
+                                                                    final FieldProjection projection,
+                                                                    Optional<Long> lastSeenId,
+                                                                    final List<IssueSummary> issues) {
+        return Futures.transform(loadPageAsync(JQLClauses.afterId(query, lastSeenId), projection, 0,
+                                               pageSizes.pageSize()),
+                                 new AsyncFunction<SearchResultPage, List<IssueSummary>>() {
+            @Override
+            public ListenableFuture<List<IssueSummary>> apply(SearchResultPage page) {
+                issues.addAll(page.getIssues());
+                if (isLastPageInIdOrder(page)) {
+                    return Futures.immediateFuture(issues);
+                }
+                return loadInIdOrderAsync(query, projection, lastIdOn(page), issues);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * The issues of a page, along with any that were missing because it came back short.
+     */
+    private ListenableFuture<List<IssueSummary>> completedAsync(final SearchResultPage page, int pageSize,
+                                                                final String query,
+                                                                final FieldProjection projection) {
+        final int pageEnd = Math.min(page.getStartAt() + pageSize, page.getTotal());
+        final int loaded = page.getStartAt() + page.getIssues().size();
+        if (page.getIssues().isEmpty() || loaded >= pageEnd) {
+            return Futures.immediateFuture(page.getIssues());
+        }
+        return Futures.transform(loadPageAsync(query, projection, loaded, pageEnd - loaded),
+                                 new AsyncFunction<SearchResultPage, List<IssueSummary>>() {
+            @Override
+            public ListenableFuture<List<IssueSummary>> apply(SearchResultPage nextPart) {
+                return Futures.transform(completedAsync(nextPart, pageEnd - loaded, query, projection),
+                                         new Function<List<IssueSummary>, List<IssueSummary>>() {
+                    @Override
+                    public List<IssueSummary> apply(List<IssueSummary> remainder) {
+                        List<IssueSummary> issues = Lists.newArrayList(page.getIssues());
+                        issues.addAll(remainder);
+                        return issues;
+                    }
+                }, asyncExecutor);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Building the search may download the custom field ids, so it runs on the async executor.
+     */
+    private ListenableFuture<SearchResultPage> loadPageAsync(final String query, final FieldProjection projection,
+                                                             final int startAt, final int maxResults) {
+        return offCallerThread(new Callable<ListenableFuture<SearchResultPage>>() {
+            @Override
+            public ListenableFuture<SearchResultPage> call() throws Exception {
+                final long requestedAt = System.currentTimeMillis();
+                return Futures.transform(transport.submit(searchInvocation(query, projection, startAt, maxResults)),
+                                         new AsyncFunction<Response, SearchResultPage>() {
+                    @Override
+                    public ListenableFuture<SearchResultPage> apply(Response response) throws Exception {
+                        return Futures.immediateFuture(searchPageIn(response, projection, startAt, maxResults,
+                                                                    requestedAt));
+                    }
+                }, asyncExecutor);
+            }
+        });
+    }
+
+    InFlightLoads<ProjectedLookup, Optional<IssueSummary>> getKeyLoads() {
+        return keyLoads;
+    }
+
+    /**
+     * The shared caches load each entry through a client that decodes the entry's field set.
+     * Once every client for that field set is closed, the entry cannot be decoded properly, so it fails to load
+     * rather than being loaded with other fields and cached under its key.
+     */
+    JerseyJiraClient clientFor(ProjectedLookup lookup) {
+        if (lookup.getFieldSet().equals(fieldSetFor(lookup.getProjection()))) {
+            return this;
+        }
+        JerseyJiraClient sameFields = clientsByFieldSet.get(lookup.getFieldSet());
+        if (sameFields == null) {
+            throw new IllegalStateException("No open client decodes the custom fields " + lookup.getFieldSet()
+                                            + " needed to load " + lookup);
+        }
+        return sameFields;
     }
 
-    private String getJSONResponse(String query, int startAt) throws JSONException{
+    private List<String> fieldSetFor(FieldProjection projection) {
+        return projection.includesCustomFields() ? customFields : ImmutableList.<String>of();
+    }
 
-        String fields = "key,summary,description,issuetype,labels,fixVersions";
-        fields = addCustomFieldsTo(fields);
+    public WebTarget buildWebTargetFor(String path) {
+        return transport.target(path);
+    }
 
-        WebTarget target = buildWebTargetFor(REST_SEARCH)
+    private Invocation searchInvocation(String query, FieldProjection projection, int startAt, int maxResults)
+            throws JSONException{
+
+        if (query.length() > MAX_GET_QUERY_LENGTH) {
+            return postSearchInvocation(query, fieldsFor(projection), projection.includesRenderedFields(),
+                                        startAt, maxResults, true);
+        }
+        WebTarget target = withProjection(transport.searchTarget()
                                             .queryParam("jql", query)
                                             .queryParam("startAt", startAt)
-                                            .queryParam("maxResults", batchSize)
-                                            .queryParam("expand", "renderedFields")
-                                            .queryParam("fields", fields);
-        Response response = target.request().get();
-        checkValid(response);
-        return response.readEntity(String.class);
+                                            .queryParam("maxResults", maxResults), projection);
+        return target.request().buildGet();
     }
 
-    private String addCustomFieldsTo(String fields) throws JSONException {
+    /**
+     * Search with the query in the request body, so that long queries are not limited by the maximum URL length.
+     */
+    private Invocation postSearchInvocation(String query, List<String> fields, boolean expandRenderedFields,
+                                            int startAt, int maxResults, boolean validateQuery)
+            throws JSONException {
+        JSONObject search = new JSONObject();
+        search.put("jql", query);
+        search.put("startAt", startAt);
+        search.put("maxResults", maxResults);
+        search.put("fields", new JSONArray(fields));
+        if (expandRenderedFields) {
+            search.put("expand", new JSONArray(ImmutableList.of("renderedFields")));
+        }
+        if (!validateQuery) {
+            search.put("validateQuery", false);
+        }
+        return transport.searchTarget().request().buildPost(Entity.json(search.toString()));
+    }
+
+    private List<String> fieldsFor(FieldProjection projection) throws JSONException {
+        List<String> customFieldIds = projection.includesCustomFields() ? customFieldIds() : EMPTY_LIST;
+        return Splitter.on(",").splitToList(projection.fieldsParameter(customFieldIds));
+    }
 
+    private WebTarget withProjection(WebTarget target, FieldProjection projection) throws JSONException {
+        List<String> customFieldIds = projection.includesCustomFields() ? customFieldIds() : EMPTY_LIST;
+        WebTarget projectedTarget = target.queryParam("fields", projection.fieldsParameter(customFieldIds));
+        if (projection.includesRenderedFields()) {
+            projectedTarget = projectedTarget.queryParam("expand", "renderedFields");
+        }
+        return projectedTarget;
+    }
+
+    private List<String> customFieldIds() throws JSONException {
+        List<String> customFieldIds = Lists.newArrayList();
         for(String customField : customFields) {
             if (getCustomFieldsIndex().containsKey(customField)) {
-                fields = fields + "," + getCustomFieldsIndex().get(customField).getId();
+                customFieldIds.add(getCustomFieldsIndex().get(customField).getId());
             }
         }
-        return fields;
+        return customFieldIds;
     }
 
-    private String getJSONProjectVersions(String projectName) throws JSONException{
-        String url = String.format(VERSIONS_SEARCH,projectName);
-        WebTarget target = buildWebTargetFor(url);
-        Response response = target.request().get();
-        checkValid(response);
-        return response.readEntity(String.class);
+    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+        return findByKey(key, FieldProjection.ALL);
     }
 
-    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+    /**
+     * Load an issue by key, requesting only the fields in the given projection.
+     */
+    public Optional<IssueSummary> findByKey(String key, FieldProjection projection) throws JSONException {
+        foregroundLookupStarted();
         try {
             Preconditions.checkNotNull(key,"JIRA key cannot be null");
-            return issueSummaryCache.get(key);
+            awaitPrefetchOf(key, projection);
+            Optional<OffHeapIssueStore> store = offHeapStoreFor(projection);
+            if (store.isPresent()) {
+                return findInStore(store.get(), key);
+            }
+            return issueSummaryCache.get(new ProjectedLookup(key, projection, customFields));
         } catch (ExecutionException e) {
             throw new JSONException(e.getCause());
         } catch (RuntimeException runtimeException) {
             throw new JSONException(runtimeException.getCause());
+        } finally {
+            foregroundLookupFinished();
         }
     }
 
-    public Optional<IssueSummary> loadByKey(String key) throws JSONException {
-
-        Optional<String> jsonResponse = readFieldValues(url, "rest/api/2/issue/" + key);
-
-        if (jsonResponse.isPresent()) {
-            JSONObject responseObject = new JSONObject(jsonResponse.get());
-            return Optional.of(convertToIssueSummary(responseObject));
+    /**
+     * Foreground lookups hold back the project prefetch, which requests no new page until they are done.
+     */
+    private void foregroundLookupStarted() {
+        if (projectPrefetch.isPresent()) {
+            projectPrefetch.get().foregroundLookupStarted();
         }
-        return Optional.absent();
     }
 
-    private Version convertToVersion(JSONObject issueObject) throws JSONException {
-        try {
-            return new Version(uriFrom(issueObject),
-                    issueObject.getLong("id"),
-                    stringValueOf(issueObject.get("name")),
-                    booleanValueOf(issueObject.get("archived")),
-                    booleanValueOf(issueObject.get("released")));
-        } catch (JSONException e) {
-            logger.error("Could not load issue from JSON",e);
-            logger.error("JSON:" + issueObject.toString(4));
-            throw e;
+    private void foregroundLookupFinished() {
+        if (projectPrefetch.isPresent()) {
+            projectPrefetch.get().foregroundLookupFinished();
         }
     }
 
-    private IssueSummary convertToIssueSummary(JSONObject issueObject) throws JSONException {
-
-        JSONObject fields = (JSONObject) issueObject.get("fields");
-        JSONObject renderedFields = (JSONObject) issueObject.get("renderedFields");
-        JSONObject issueType = (JSONObject) fields.get("issuetype");
-        try {
-            Map<String, String> renderedFieldValues = renderedFieldValuesFrom(renderedFields);
-            return new IssueSummary(uriFrom(issueObject),
-                    issueObject.getLong("id"),
-                    stringValueOf(issueObject.get("key")),
-                    stringValueOf(fields.get("summary")),
-                    stringValueOf(optional(fields,"description")),
-                    renderedFieldValues,
-                    stringValueOf(issueType.get("name")),
-                    toList((JSONArray) fields.get("labels")),
-                    toListOfVersions((JSONArray) fields.get("fixVersions")),
-                    customFieldValuesIn(fields,renderedFields));
-        } catch (JSONException e) {
-            logger.error("Could not load issue from JSON",e);
-            logger.error("JSON:" + issueObject.toString(4));
-            throw e;
+    /**
+     * An issue that is not cached yet may be on the page the project prefetch is loading,
+     * in which case it is taken from there rather than requested again.
+     */
+    private void awaitPrefetchOf(String key, FieldProjection projection) {
+        if (!projectPrefetch.isPresent() || !projection.equals(FieldProjection.ALL)) {
+            return;
+        }
+        Optional<OffHeapIssueStore> store = offHeapStoreFor(projection);
+        boolean cached = store.isPresent() ? store.get().contains(key)
+                                           : issueSummaryCache.asMap()
+                                                              .containsKey(new ProjectedLookup(key, projection,
+                                                                                               customFields));
+        if (!cached) {
+            projectPrefetch.get().awaitPageInFlight(key);
         }
     }
 
-    private Map<String, String> renderedFieldValuesFrom(JSONObject renderedFields) throws JSONException {
-        Map<String,String> renderedFieldMap = Maps.newHashMap();
-        for(Object key : Lists.newArrayList(renderedFields.sortedKeys())) {
-            String fieldName = (String) key;
-            String renderedValue = renderedFields.getString(fieldName);
-            if (getCustomFieldNameIndex().containsKey(fieldName)) {
-                fieldName = getCustomFieldNameIndex().get(key);
+    /**
+     * Issues loaded by the project prefetch are cached by key as fully loaded issues,
+     * and stored in the persistent cache if there is one.
+     */
+    void prefetched(List<IssueSummary> issues) {
+        Optional<OffHeapIssueStore> store = offHeapStoreFor(FieldProjection.ALL);
+        if (store.isPresent()) {
+            store.get().putAll(issues);
+        } else {
+            cacheByKey(issues, FieldProjection.ALL);
+        }
+        if (persistentIssueCache.isPresent()) {
+            for (IssueSummary issue : issues) {
+                persistentIssueCache.get().put(issue);
             }
-            renderedFieldMap.put(fieldName, renderedValue);
-
         }
-        return renderedFieldMap;
     }
 
-    private Map<String, Object> customFieldValuesIn(JSONObject fields, JSONObject renderedFields) throws JSONException {
-        Map<String, Object> customFieldValues = Maps.newHashMap();
-        for (String customFieldName : customFields) {
-            CustomField customField = getCustomFieldsIndex().get(customFieldName);
-            if (customFieldDefined(fields, renderedFields, customField)) {
-                Object customFieldValue = readFieldValue(fields, customField);
-                customFieldValues.put(customFieldName, customFieldValue);
-            }
+    /**
+     * @return how far the background load of the project has got, if the project prefetch is enabled
+     */
+    public Optional<PrefetchProgress> getPrefetchProgress() {
+        if (!projectPrefetch.isPresent()) {
+            return Optional.absent();
         }
-        return customFieldValues;
+        return Optional.of(projectPrefetch.get().getProgress());
     }
 
-    private boolean customFieldDefined(JSONObject fields, JSONObject renderedFields, CustomField customField) throws JSONException {
-        if (customField != null) {
-            return (hasCustomFieldValue(fields, customField) || hasCustomFieldValue(renderedFields, customField));
-        } else {
-            return false;
+    private Optional<IssueSummary> findInStore(OffHeapIssueStore store, String key) throws JSONException {
+        Optional<IssueSummary> storedIssue = store.get(key);
+        if (storedIssue.isPresent()) {
+            return storedIssue;
+        }
+        Optional<IssueSummary> issue = loadByKey(key, FieldProjection.ALL);
+        if (issue.isPresent()) {
+            store.put(issue.get());
         }
+        return issue;
     }
 
-    private boolean hasCustomFieldValue(JSONObject fields, CustomField customField) throws JSONException {
-        return (fields.has(customField.getId())) && (!fields.get(customField.getId()).equals(null));
+    /**
+     * Load several issues by key. Issues that are not already cached are fetched with a few key searches,
+     * rather than with one request per issue.
+     *
+     * @param keys JIRA issue keys
+     * @return an entry for each key, in the order given, which is absent if there is no such issue
+     */
+    public Map<String, Optional<IssueSummary>> findByKeys(Collection<String> keys) throws JSONException {
+        return findByKeys(keys, FieldProjection.ALL);
     }
 
-    private Object readFieldValue(JSONObject fields, CustomField customField) throws JSONException {
+    public Map<String, Optional<IssueSummary>> findByKeys(Collection<String> keys, FieldProjection projection)
+            throws JSONException {
+        Preconditions.checkNotNull(keys,"JIRA keys cannot be null");
+        List<ProjectedLookup> lookups = Lists.newArrayList();
+        for(String key : keys) {
+            Preconditions.checkNotNull(key,"JIRA key cannot be null");
+            lookups.add(new ProjectedLookup(key, projection, customFields));
+        }
+        foregroundLookupStarted();
+        try {
+            for(String key : keys) {
+                awaitPrefetchOf(key, projection);
+            }
+            Optional<OffHeapIssueStore> store = offHeapStoreFor(projection);
+            if (store.isPresent()) {
+                return findInStore(store.get(), keys);
+            }
+            Map<ProjectedLookup, Optional<IssueSummary>> issues = issueSummaryCache.getAll(lookups);
+            Map<String, Optional<IssueSummary>> issuesByKey = Maps.newLinkedHashMap();
+            for(ProjectedLookup lookup : lookups) {
+                issuesByKey.put(lookup.getValue(), issues.get(lookup));
+            }
+            return issuesByKey;
+        } catch (ExecutionException e) {
+            throw new JSONException(e.getCause());
+        } catch (RuntimeException runtimeException) {
+            throw new JSONException(runtimeException.getCause());
+        } finally {
+            foregroundLookupFinished();
+        }
+    }
 
-        String fieldId = customField.getId();
-        String fieldValue = fieldIsDefined(fields, fieldId) ? fields.getString(fieldId) : "";
+    private Map<String, Optional<IssueSummary>> findInStore(OffHeapIssueStore store, Collection<String> keys)
+            throws JSONException {
+        Map<String, Optional<IssueSummary>> issuesByKey = Maps.newLinkedHashMap();
+        List<String> missingKeys = Lists.newArrayList();
+        for(String key : keys) {
+            Optional<IssueSummary> storedIssue = store.get(key);
+            issuesByKey.put(key, storedIssue);
+            if (!storedIssue.isPresent()) {
+                missingKeys.add(key);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            Map<String, Optional<IssueSummary>> loadedIssues = loadByKeys(missingKeys, FieldProjection.ALL);
+            for(Map.Entry<String, Optional<IssueSummary>> loadedIssue : loadedIssues.entrySet()) {
+                issuesByKey.put(loadedIssue.getKey(), loadedIssue.getValue());
+                if (loadedIssue.getValue().isPresent()) {
+                    store.put(loadedIssue.getValue().get());
+                }
+            }
+        }
+        return issuesByKey;
+    }
 
-        if (isJSON(fieldValue)) {
-            JSONObject field = new JSONObject(fieldValue);
+    protected Map<String, Optional<IssueSummary>> loadByKeys(Collection<String> keys, FieldProjection projection)
+            throws JSONException {
+        Optional<PersistentIssueCache> diskCache = persistentCacheFor(projection);
+        Map<String, Optional<IssueSummary>> issues = Maps.newLinkedHashMap();
+        List<String> missingKeys = Lists.newArrayList();
+        for(String key : ImmutableSet.copyOf(keys)) {
+            Optional<IssueSummary> cachedIssue
+                    = diskCache.isPresent() ? diskCache.get().get(key) : Optional.<IssueSummary>absent();
+            issues.put(key, cachedIssue);
+            if (!cachedIssue.isPresent()) {
+                missingKeys.add(key);
+            }
+        }
 
-            if (customField.getType().equals("string")) {
-                return (field == JSONObject.NULL) ? "" : field.getString("value");
-            } else if (customField.getType().equals("array")) {
-                return readListFrom(field);
+        List<Future<Map<String, IssueSummary>>> batches = Lists.newArrayList();
+        for(List<String> batch : Lists.partition(missingKeys, KEYS_PER_SEARCH)) {
+            batches.add(searchExecutor.submit(new KeySearchLoader(this, batch, projection)));
+        }
+        for(Map<String, IssueSummary> batch : waitForAll(batches)) {
+            for(Map.Entry<String, IssueSummary> issue : batch.entrySet()) {
+                issues.put(issue.getKey(), Optional.of(issue.getValue()));
+                if (diskCache.isPresent()) {
+                    diskCache.get().put(issue.getValue());
+                }
             }
         }
-        return fieldValue;
+        return issues;
     }
 
-    private boolean fieldIsDefined(JSONObject fields, String fieldId) throws JSONException {
-        return (fields.has(fieldId) && (fields.get(fieldId) != JSONObject.NULL));
+    /**
+     * Find the issues with the given keys using one search, reading more than one page only if the server
+     * returns fewer results per page than requested.
+     * Unknown keys are ignored rather than rejected by the server.
+     *
+     * @return the issues found, by the key they were requested with
+     */
+    protected Map<String, IssueSummary> loadKeyBatch(List<String> keys, FieldProjection projection)
+            throws JSONException {
+        String query = JQLClauses.keyIn(keys);
+        List<IssueSummary> issues = Lists.newArrayList();
+        SearchResultPage page;
+        do {
+            int startAt = issues.size();
+            Response response = postSearchInvocation(query, fieldsFor(projection),
+                                                     projection.includesRenderedFields(),
+                                                     startAt, keys.size(), false).invoke();
+            if (isEmpty(response)) {
+                response.close();
+                return loadOneByOne(keys, projection);
+            }
+            checkValid(response);
+            page = responseDecoder(projection).readSearchPage(entityStreamOf(response), startAt, keys.size());
+            issues.addAll(page.getIssues());
+        } while (!page.getIssues().isEmpty() && issues.size() < page.getTotal());
+        return byRequestedKey(keys, issues, projection);
     }
 
-    private boolean isJSON(String fieldValue) {
-        return fieldValue.trim().startsWith("{");
+    /**
+     * JIRA finds an issue by a key in lower case, or by a key it had before it was moved to another project,
+     * but returns it under its current key. Results are matched to the requested keys without regard to case.
+     * If any result is left over, the keys still unmatched are looked up one by one, which follows moved keys.
+     */
+    private Map<String, IssueSummary> byRequestedKey(List<String> keys, List<IssueSummary> issues,
+                                                     FieldProjection projection) throws JSONException {
+        ListMultimap<String, String> requestedKeys = ArrayListMultimap.create();
+        for(String key : keys) {
+            requestedKeys.put(key.toUpperCase(Locale.ENGLISH), key);
+        }
+        Map<String, IssueSummary> issuesByKey = Maps.newLinkedHashMap();
+        boolean unmatchedIssues = false;
+        for(IssueSummary issue : issues) {
+            List<String> matchingKeys = requestedKeys.get(issue.getKey().toUpperCase(Locale.ENGLISH));
+            unmatchedIssues |= matchingKeys.isEmpty();
+            for(String key : matchingKeys) {
+                issuesByKey.put(key, issue);
+            }
+        }
+        if (unmatchedIssues) {
+            List<String> unmatchedKeys = Lists.newArrayList();
+            for(String key : keys) {
+                if (!issuesByKey.containsKey(key)) {
+                    unmatchedKeys.add(key);
+                }
+            }
+            issuesByKey.putAll(loadOneByOne(unmatchedKeys, projection));
+        }
+        return issuesByKey;
     }
 
-    private List<String> readListFrom(JSONObject jsonField) throws JSONException {
-        List<String> values = Lists.newArrayList();
-        values.add(jsonField.getString("value"));
-        if (jsonField.has("child")) {
-            values.addAll(readListFrom(jsonField.getJSONObject("child")));
+    private Map<String, IssueSummary> loadOneByOne(List<String> keys, FieldProjection projection)
+            throws JSONException {
+        Map<String, IssueSummary> issues = Maps.newLinkedHashMap();
+        for(String key : keys) {
+            Optional<IssueSummary> issue = loadFromServer(key, projection);
+            if (issue.isPresent()) {
+                issues.put(key, issue.get());
+            }
         }
-        return values;
+        return issues;
     }
 
-    private List<CustomField> convertToCustomFields(JSONArray customFieldsList) throws JSONException {
-
-        List<CustomField> customFields = Lists.newArrayList();
+    public Optional<IssueSummary> loadByKey(String key) throws JSONException {
+        return loadByKey(key, FieldProjection.ALL);
+    }
 
-        for (int i = 0; i < customFieldsList.length(); i++) {
-            JSONObject fieldObject = customFieldsList.getJSONObject(i);
-            customFields.add(convertToCustomField(fieldObject));
+    public Optional<IssueSummary> loadByKey(String key, FieldProjection projection) throws JSONException {
+        Optional<PersistentIssueCache> diskCache = persistentCacheFor(projection);
+        if (!diskCache.isPresent()) {
+            return loadFromServer(key, projection);
+        }
+        Optional<IssueSummary> cachedIssue = diskCache.get().get(key);
+        if (cachedIssue.isPresent()) {
+            return cachedIssue;
         }
-        return customFields;
+        Optional<IssueSummary> issue = loadFromServer(key, projection);
+        if (issue.isPresent()) {
+            diskCache.get().put(issue.get());
+        }
+        return issue;
+    }
 
+    /**
+     * The persistent cache holds full issue lookups only. It is revalidated before use if it is due.
+     */
+    private Optional<PersistentIssueCache> persistentCacheFor(FieldProjection projection) {
+        if (!projection.equals(FieldProjection.ALL) || !persistentIssueCache.isPresent()) {
+            return Optional.absent();
+        }
+        PersistentIssueCache cache = persistentIssueCache.get();
+        try {
+            cache.revalidateIfDue(cacheSettings.getRevalidationInterval(), new UpdatedIssuesRevalidation());
+            return Optional.of(cache);
+        } catch (IOException e) {
+            logger.warn("Could not revalidate the issue cache in " + cache.getDirectory(), e);
+            return Optional.absent();
+        }
     }
 
-    private CustomField convertToCustomField(JSONObject fieldObject) throws JSONException {
-        return new CustomField(fieldObject.getString("id"),
-                fieldObject.getString("name"),
-                fieldTypeOf(fieldObject));
+    private Optional<IssueSummary> loadFromServer(String key, FieldProjection projection) throws JSONException {
+        return issueIn(readResource(withProjection(transport.target(transport.issuePath(key)), projection)),
+                       projection);
     }
 
-    private String fieldTypeOf(JSONObject fieldObject) throws JSONException {
-        if (fieldObject.has("schema")) {
-            return fieldObject.getJSONObject("schema").getString("type");
-        } else {
-            return "string";
+    private Optional<IssueSummary> issueIn(Optional<Response> response, FieldProjection projection)
+            throws JSONException {
+        if (response.isPresent()) {
+            return Optional.of(responseDecoder(projection).readIssue(entityStreamOf(response.get())));
         }
+        return Optional.absent();
     }
 
-    private Object optional(JSONObject fields, String fieldName) throws JSONException {
-        return (fields.has(fieldName) ? fields.get(fieldName) : null);
-    }
+    /**
+     * Finds the cached issues updated since the last revalidation with a single search over their projects.
+     * JQL dates are read in the time zone of the JIRA user, so the search starts a day early to be safe.
+     * The cached keys that still exist are found with key-only searches, as for {@link #findByKeys}.
+     */
+    private class UpdatedIssuesRevalidation implements PersistentIssueCache.Revalidation {
+
+        private static final long TIME_ZONE_MARGIN = 24 * 60 * 60 * 1000L;
+
+        @Override
+        public Iterable<IssueSummary> issuesUpdatedSince(Set<String> cachedKeys, long since) {
+            Set<String> projectKeys = Sets.newTreeSet();
+            for (String key : cachedKeys) {
+                if (key.lastIndexOf('-') > 0) {
+                    projectKeys.add("\"" + key.substring(0, key.lastIndexOf('-')) + "\"");
+                }
+            }
+            String updatedSince = new SimpleDateFormat("yyyy/MM/dd HH:mm").format(new Date(since - TIME_ZONE_MARGIN));
+            final String query = "project in (" + Joiner.on(",").join(projectKeys) + ")"
+                                 + " AND updated >= \"" + updatedSince + "\"";
+            return new Iterable<IssueSummary>() {
+                @Override
+                public Iterator<IssueSummary> iterator() {
+                    return iterateByJQL(query, FieldProjection.fields("updated"));
+                }
+            };
+        }
 
-    private List<String> toList(JSONArray array) throws JSONException {
-        List<String> list = Lists.newArrayList();
-        for (int i = 0; i < array.length(); i++) {
-            list.add(stringValueOf(array.get(i)));
+        @Override
+        public Set<String> existingKeys(Set<String> cachedKeys) throws IOException {
+            Set<String> existingKeys = Sets.newHashSet();
+            try {
+                for (List<String> batch : Lists.partition(Lists.newArrayList(cachedKeys), KEYS_PER_SEARCH)) {
+                    existingKeys.addAll(existingKeysIn(batch));
+                }
+            } catch (JSONException e) {
+                throw new IOException("Could not check which cached issues still exist", e);
+            }
+            return existingKeys;
         }
-        return list;
     }
 
-    private List<String> toListOfVersions(JSONArray array) throws JSONException {
-        List<String> list = Lists.newArrayList();
-        for (int i = 0; i < array.length(); i++) {
-            JSONObject versionObject = (JSONObject) array.get(i);
-            list.add(versionObject.getString("name"));
+    /**
+     * The keys, out of those given, that the server still has an issue under.
+     * JIRA finds a moved issue by its old key but returns it under its new one, so moved issues are left out,
+     * along with deleted ones. If the server rejects the search anyway, every key is taken to exist.
+     */
+    private Set<String> existingKeysIn(List<String> keys) throws JSONException {
+        FieldProjection keysOnly = FieldProjection.fields();
+        String query = JQLClauses.keyIn(keys);
+        Set<String> foundKeys = Sets.newHashSet();
+        int startAt = 0;
+        SearchResultPage page;
+        do {
+            Response response = postSearchInvocation(query, fieldsFor(keysOnly), false, startAt, keys.size(), false)
+                    .invoke();
+            if (isEmpty(response)) {
+                response.close();
+                return ImmutableSet.copyOf(keys);
+            }
+            checkValid(response);
+            page = responseDecoder(keysOnly).readSearchPage(entityStreamOf(response), startAt, keys.size());
+            for (IssueSummary issue : page.getIssues()) {
+                foundKeys.add(issue.getKey().toUpperCase(Locale.ENGLISH));
+            }
+            startAt += page.getIssues().size();
+        } while (!page.getIssues().isEmpty() && startAt < page.getTotal());
+        Set<String> existingKeys = Sets.newHashSet();
+        for (String key : keys) {
+            if (foundKeys.contains(key.toUpperCase(Locale.ENGLISH))) {
+                existingKeys.add(key);
+            }
         }
-        return list;
+        return existingKeys;
     }
 
-    private URI uriFrom(JSONObject issueObject) throws JSONException {
-        try {
-            return new URI((String) issueObject.get("self"));
-        } catch (URISyntaxException e) {
-            throw new IllegalArgumentException("Self field not a valid URL");
+    private JiraResponseDecoder responseDecoder(FieldProjection projection) throws JSONException {
+        if (!projection.includesCustomFields() && !projection.includesRenderedFields()) {
+            return JiraResponseDecoder.withoutCustomFields();
         }
+        List<String> decodedCustomFields = projection.includesCustomFields() ? customFields : EMPTY_LIST;
+        return new JiraResponseDecoder(decodedCustomFields, getCustomFieldsIndex(), getCustomFieldNameIndex());
+    }
+
+    private InputStream entityStreamOf(Response response) {
+        return response.readEntity(InputStream.class);
+    }
+
+    /**
+     * Load a tree of issues, such as epics with their stories and sub-tasks, one level at a time.
+     * Each level is found with a single batched search for the children of every issue on the level above,
+     * so deep trees with thousands of issues take only a few round trips.
+     *
+     * @param rootKeys   the keys of the issues at the top of the tree
+     * @param parentLink how child issues refer to their parents
+     * @param maxDepth   the number of levels to load below the roots
+     */
+    public IssueHierarchy findHierarchy(Collection<String> rootKeys, ParentLink parentLink, int maxDepth)
+            throws JSONException {
+        return findHierarchy(rootKeys, parentLink, maxDepth, FieldProjection.ALL);
+    }
+
+    public IssueHierarchy findHierarchy(Collection<String> rootKeys, ParentLink parentLink, int maxDepth,
+                                        FieldProjection projection) throws JSONException {
+        Preconditions.checkNotNull(rootKeys,"JIRA keys cannot be null");
+        Preconditions.checkNotNull(parentLink,"Parent link cannot be null");
+        return new HierarchyLoader(this, parentLink, projection, maxDepth).load(rootKeys);
     }
 
     public Integer countByJQL(String query) throws JSONException{
@@ -387,10 +1462,14 @@ public class JerseyJiraClient {
     }
 
     protected Integer loadCountByJQL(String query) throws JSONException{
-        WebTarget target = buildWebTargetFor(REST_SEARCH).queryParam("jql", query);
+        WebTarget target = transport.searchTarget()
+                                    .queryParam("jql", query)
+                                    .queryParam("maxResults", 0)
+                                    .queryParam("fields", "key");
         Response response = target.request().get();
 
         if (isEmpty(response)) {
+            response.close();
             return 0;
         } else {
             checkValid(response);
@@ -408,64 +1487,148 @@ public class JerseyJiraClient {
         return total;
     }
 
-    private Optional<String> readFieldValues(String url, String path) throws JSONException {
-        WebTarget target = restClient().target(url)
-                                       .path(path)
-                                       .queryParam("expand", "renderedFields");
-
-        Response response = target.request().get();
-
-        if (response.getStatus() == REDIRECT_REQUEST) {
-            response = Redirector.forPath(path).usingClient(restClient()).followRedirectsIn(response);
-        }
+    private Optional<Response> readResource(WebTarget target) throws JSONException {
+        return resourceIn(target.request().get());
+    }
 
+    /**
+     * Redirects have already been followed by the transport.
+     */
+    private Optional<Response> resourceIn(Response response) throws JSONException {
         if (resourceDoesNotExist(response)) {
+            response.close();
             return Optional.absent();
         } else {
             checkValid(response);
-            return Optional.of(response.readEntity(String.class));
+            return Optional.of(response);
         }
     }
 
-    private Optional<String> readFieldMetadata(String url, String path) throws JSONException {
-        WebTarget target = restClient().target(url)
-                .path(path)
-                .queryParam("expand", "renderedFields")
-                .queryParam("project", project)
-                .queryParam("issuetypeName",metadataIssueType)
-                .queryParam("expand","projects.issuetypes.fields");
-
-        Response response = target.request().get();
+    /**
+     * Read a slow-changing resource, sending a conditional request if a copy of it is already held.
+     */
+    private Optional<byte[]> readRevalidatedResource(WebTarget target) throws JSONException {
+        Optional<byte[]> freshBody = metadataCache.freshBodyOf(target);
+        if (freshBody.isPresent()) {
+            return freshBody;
+        }
+        return revalidatedBodyIn(metadataCache.conditionalRequest(target).get(), target);
+    }
 
-        if (response.getStatus() == REDIRECT_REQUEST) {
-            response = Redirector.forPath(path).usingClient(restClient()).followRedirectsIn(response);
+    private Optional<byte[]> revalidatedBodyIn(Response response, WebTarget target) throws JSONException {
+        if (response.getStatus() == ConditionalGetCache.NOT_MODIFIED) {
+            response.close();
+            Optional<byte[]> body = metadataCache.notModified(target);
+            if (body.isPresent()) {
+                return body;
+            }
+            response = target.request().get();
         }
+        return storedBodyIn(response, target);
+    }
 
-        if (resourceDoesNotExist(response)) {
+    /**
+     * As for {@link #revalidatedBodyIn(Response, WebTarget)}, but requesting the resource again in full, if its
+     * stored copy has gone, without blocking.
+     */
+    private ListenableFuture<Optional<byte[]>> revalidatedBodyAsync(ListenableFuture<Response> response,
+                                                                    final WebTarget target) {
+        return Futures.transform(response, new AsyncFunction<Response, Optional<byte[]>>() {
+            @Override
+            public ListenableFuture<Optional<byte[]>> apply(Response response) throws Exception {
+                if (response.getStatus() == ConditionalGetCache.NOT_MODIFIED) {
+                    response.close();
+                    Optional<byte[]> body = metadataCache.notModified(target);
+                    if (body.isPresent()) {
+                        return Futures.immediateFuture(body);
+                    }
+                    return revalidatedBodyAsync(transport.submit(target.request().buildGet()), target);
+                }
+                return Futures.immediateFuture(storedBodyIn(response, target));
+            }
+        }, asyncExecutor);
+    }
+
+    private Optional<byte[]> storedBodyIn(Response response, WebTarget target) throws JSONException {
+        Optional<Response> resource = resourceIn(response);
+        if (!resource.isPresent()) {
+            metadataCache.evict(target);
             return Optional.absent();
-        } else {
-            checkValid(response);
-            return Optional.of(response.readEntity(String.class));
+        }
+        try {
+            return Optional.of(metadataCache.store(target, resource.get()));
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
     }
 
+    /**
+     * Create metadata is requested for all of the issue types of the project at once,
+     * so that looking up the options of another issue type does not need another request.
+     */
+    CreateMetadata loadCreateMetadata(String project) throws JSONException {
+        WebTarget target = transport.createMetadataTarget()
+                .queryParam("projectKeys", project)
+                .queryParam("expand", "projects.issuetypes.fields");
+
+        Optional<byte[]> body = readRevalidatedResource(target);
+        if (body.isPresent()) {
+            return JiraResponseDecoder.withoutCustomFields().readCreateMetadata(new ByteArrayInputStream(body.get()),
+                                                                                project);
+        }
+        return CreateMetadata.EMPTY;
+    }
+
     public Client restClient() {
-        return ClientBuilder.newBuilder().register(new HttpBasicAuthFilter(username, password)).build();
+        return transport.getClient();
     }
 
-    private String stringValueOf(Object field) {
-        if (field != null) {
-            return field.toString();
-        } else {
-            return null;
-        }
+    public JiraConnectionSettings getConnectionSettings() {
+        return connectionSettings;
     }
 
-    private boolean booleanValueOf(Object field) {
-        if (field != null) {
-            return Boolean.valueOf(field.toString());
-        } else {
-            return false;
+    public JiraCacheSettings getCacheSettings() {
+        return cacheSettings;
+    }
+
+    /**
+     * Hit, miss, load time and eviction counts for the issues looked up by key.
+     */
+    public CacheStats getIssueCacheStats() {
+        return issueSummaryCache.stats();
+    }
+
+    /**
+     * Hit, miss, load time and eviction counts for the JQL query results.
+     */
+    public CacheStats getQueryCacheStats() {
+        return issueQueryCache.stats();
+    }
+
+    /**
+     * Release the pooled connections held by this client.
+     * Connections and caches shared with derived clients are only released once every one of them is closed.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (clientsByFieldSet) {
+            if (fieldSetUsers.decrementAndGet() == 0) {
+                clientsByFieldSet.remove(customFields);
+                if (projectPrefetch.isPresent()) {
+                    projectPrefetch.get().stop();
+                }
+                if (offHeapIssueStore.isPresent()) {
+                    offHeapIssueStore.get().close();
+                }
+            }
+        }
+        if (connectionUsers.decrementAndGet() == 0) {
+            searchExecutor.shutdownNow();
+            refreshExecutor.shutdownNow();
+            asyncExecutor.shutdownNow();
+            transport.close();
         }
     }
 
@@ -480,6 +1643,7 @@ public class JerseyJiraClient {
     public void checkValid(Response response) throws JSONException {
         int status = response.getStatus();
         if (status != OK) {
+            response.close();
             switch(status) {
                 case 401 : handleAuthenticationError("Authentication error (401) for user " + this.username);
                 case 403 : handleAuthenticationError("Forbidden error (403) for user " + this.username);
@@ -505,45 +1669,56 @@ public class JerseyJiraClient {
     }
 
     private Map<String, CustomField> getCustomFieldsIndex() throws JSONException {
-        if (customFieldsIndex == null) {
-             customFieldsIndex = indexCustomFields();
-        }
-        return customFieldsIndex;
+        return getCustomFieldCatalog().getFieldsByName();
     }
 
     private Map<String, String> getCustomFieldNameIndex() throws JSONException {
-        if (customFieldNameIndex == null) {
-            customFieldNameIndex = indexCustomFieldNames();
-        }
-        return customFieldNameIndex;
+        return getCustomFieldCatalog().getNamesById();
     }
 
-
-
-    private Map<String, String> indexCustomFieldNames() throws JSONException {
-        Map<String, String> index = Maps.newHashMap();
-        for(CustomField field : getExistingCustomFields()) {
-            index.put(field.getId(), field.getName());
+    /**
+     * The fields defined on the JIRA server are downloaded once, and shared with the other clients
+     * for the same server and user until the catalog's time to live runs out.
+     */
+    private CustomFieldCatalog getCustomFieldCatalog() throws JSONException {
+        try {
+            return CustomFieldCatalogs.catalogFor(serverIdentity(), cacheSettings.getFieldCatalogTimeToLive(),
+                                                  fieldCatalogFile(),
+                                                  new Callable<CustomFieldCatalog>() {
+                @Override
+                public CustomFieldCatalog call() throws Exception {
+                    long loadedAt = System.currentTimeMillis();
+                    return new CustomFieldCatalog(getExistingCustomFields(), loadedAt);
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JSONException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
         }
-        return index;
     }
 
+    private String serverIdentity() {
+        return username + "@" + url;
+    }
 
-    private Map<String, CustomField> indexCustomFields() throws JSONException {
-        Map<String, CustomField> index = Maps.newHashMap();
-        for(CustomField field : getExistingCustomFields()) {
-            index.put(field.getName(), field);
+    private Optional<File> fieldCatalogFile() {
+        if (!cacheSettings.getPersistentCacheDirectory().isPresent()) {
+            return Optional.absent();
         }
-        return index;
+        String fileName = Hashing.murmur3_32().hashString(serverIdentity(), Charsets.UTF_8) + ".fields";
+        return Optional.of(new File(cacheSettings.getPersistentCacheDirectory().get(), fileName));
     }
 
     private List<CustomField> getExistingCustomFields() throws JSONException {
 
-        Optional<String> jsonResponse = readFieldValues(url, "rest/api/2/field");
+        Optional<byte[]> body = readRevalidatedResource(transport.fieldTarget());
 
-        if (jsonResponse.isPresent()) {
-            JSONArray responseObject = new JSONArray(jsonResponse.get());
-            return convertToCustomFields(responseObject);
+        if (body.isPresent()) {
+            return JiraResponseDecoder.withoutCustomFields().readCustomFields(new ByteArrayInputStream(body.get()));
         }
         return EMPTY_LIST;
     }
@@ -557,55 +1732,36 @@ public class JerseyJiraClient {
     }
 
     public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
-        JSONObject responseObject = null;
-        try {
-            Optional<String> jsonResponse = readFieldMetadata(url, "rest/api/2/issue/createmeta");
-            if (jsonResponse.isPresent()) {
-                responseObject = new JSONObject(jsonResponse.get());
-
-                JSONObject fields = responseObject.getJSONArray("projects")
-                        .getJSONObject(0)
-                        .getJSONArray("issuetypes")
-                        .getJSONObject(0).getJSONObject("fields");
-
-                Iterator fieldKeys = fields.keys();
-
-                while(fieldKeys.hasNext()) {
-                    String entryFieldName = (String) fieldKeys.next();
-                    JSONObject entry = fields.getJSONObject(entryFieldName);
-                    if (entry.getString("name").equalsIgnoreCase(fieldName)) {
-                        return convertToCascadingSelectOptions(entry.getJSONArray("allowedValues"));
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            logger.error("Could not read cascading select options", e);
-            logger.info("responseObject = " + responseObject);
-
-        }
-        return EMPTY_LIST;
+        return findOptionsForCascadingSelect(fieldName, metadataIssueType);
     }
 
-    private List<CascadingSelectOption> convertToCascadingSelectOptions(JSONArray allowedValues) throws JSONException {
-        return convertToCascadingSelectOptions(allowedValues, null);
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName, String issueType) {
+        Optional<CascadingSelectOptions> options = cascadingSelectOptionsFor(fieldName, issueType);
+        return options.isPresent() ? options.get().getOptions() : EMPTY_LIST;
     }
 
-    private List<CascadingSelectOption> convertToCascadingSelectOptions(JSONArray allowedValues,
-                CascadingSelectOption parentOption) throws JSONException {
-        List<CascadingSelectOption> options = Lists.newArrayList();
-        for(int i = 0; i < allowedValues.length(); i++) {
-            JSONObject entry = (JSONObject) allowedValues.get(i);
-            String value = entry.getString("value");
+    /**
+     * Find a cascading select option by its path, e.g. findCascadingSelectOption("Requirements", "Grow Apples", "Grow red apples"),
+     * using the options defined for the metadata issue type.
+     */
+    public Optional<CascadingSelectOption> findCascadingSelectOption(String fieldName, String... path) {
+        Optional<CascadingSelectOptions> options = cascadingSelectOptionsFor(fieldName, metadataIssueType);
+        return options.isPresent() ? options.get().findOption(path) : Optional.<CascadingSelectOption>absent();
+    }
 
-            CascadingSelectOption option = new CascadingSelectOption(value, parentOption);
-            List<CascadingSelectOption> children = Lists.newArrayList();
-            if (entry.has("children")) {
-                children = convertToCascadingSelectOptions(entry.getJSONArray("children"), option);
-            }
-            option.addChildren(children);
-            options.add(option);
+    /**
+     * The options of a field, for one of the issue types of the project.
+     * Option trees are read once per project and kept as the create metadata cache policy allows.
+     */
+    public Optional<CascadingSelectOptions> cascadingSelectOptionsFor(String fieldName, String issueType) {
+        try {
+            return createMetadataCache.get(project).optionsFor(issueType, fieldName);
+        } catch (ExecutionException e) {
+            logger.error("Could not read cascading select options", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            logger.error("Could not read cascading select options", e.getCause());
         }
-        return options;
+        return Optional.absent();
     }
 
 }
@@ -0,0 +1,207 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+
+import java.io.File;
+
+/**
+ * Settings for the caches kept by the JIRA REST client.
+ */
+public class JiraCacheSettings {
+
+    private static final long DEFAULT_REVALIDATION_INTERVAL = 60000;
+    private static final long DEFAULT_FIELD_CATALOG_TTL = 60 * 60 * 1000L;
+    private static final long DEFAULT_METADATA_FRESHNESS = 5 * 60 * 1000L;
+    private static final long DEFAULT_CREATE_METADATA_TTL = 60 * 60 * 1000L;
+
+    private final File persistentCacheDirectory;
+    private final long revalidationInterval;
+    private final CachePolicy issueCachePolicy;
+    private final CachePolicy queryCachePolicy;
+    private final CachePolicy createMetadataCachePolicy;
+    private final long fieldCatalogTimeToLive;
+    private final long metadataFreshness;
+    private final boolean offHeapIssueStore;
+    private final File issueStoreFile;
+    private final boolean projectPrefetch;
+
+    private JiraCacheSettings(File persistentCacheDirectory, long revalidationInterval,
+                              CachePolicy issueCachePolicy, CachePolicy queryCachePolicy,
+                              CachePolicy createMetadataCachePolicy, long fieldCatalogTimeToLive, long metadataFreshness,
+                              boolean offHeapIssueStore, File issueStoreFile, boolean projectPrefetch) {
+        this.persistentCacheDirectory = persistentCacheDirectory;
+        this.revalidationInterval = revalidationInterval;
+        this.issueCachePolicy = issueCachePolicy;
+        this.queryCachePolicy = queryCachePolicy;
+        this.createMetadataCachePolicy = createMetadataCachePolicy;
+        this.fieldCatalogTimeToLive = fieldCatalogTimeToLive;
+        this.metadataFreshness = metadataFreshness;
+        this.offHeapIssueStore = offHeapIssueStore;
+        this.issueStoreFile = issueStoreFile;
+        this.projectPrefetch = projectPrefetch;
+    }
+
+    /**
+     * In-memory caching only.
+     */
+    public static JiraCacheSettings defaults() {
+        return new JiraCacheSettings(null, DEFAULT_REVALIDATION_INTERVAL,
+                                     CachePolicy.defaults(), CachePolicy.defaults(),
+                                     CachePolicy.defaults().withExpireAfterWrite(DEFAULT_CREATE_METADATA_TTL),
+                                     DEFAULT_FIELD_CATALOG_TTL, DEFAULT_METADATA_FRESHNESS, false, null, false);
+    }
+
+    /**
+     * @param persistentCacheDirectory a directory in which issues are kept between builds.
+     *                                 It may be shared by several JVMs at the same time.
+     */
+    public JiraCacheSettings withPersistentCache(File persistentCacheDirectory) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * @param revalidationInterval how long, in milliseconds, the persistent cache is trusted before it is checked
+     *                             again for issues updated on the server
+     */
+    public JiraCacheSettings withRevalidationInterval(long revalidationInterval) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * @param issueCachePolicy how issues looked up by key are cached in memory
+     */
+    public JiraCacheSettings withIssueCache(CachePolicy issueCachePolicy) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * @param queryCachePolicy how JQL query results are cached in memory.
+     *                         Refreshed query results are brought up to date incrementally.
+     */
+    public JiraCacheSettings withQueryCache(CachePolicy queryCachePolicy) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * @param createMetadataCachePolicy how the fields and allowed values for creating issues in each project
+     *                                  are cached in memory. By default they are read again after an hour.
+     */
+    public JiraCacheSettings withCreateMetadataCache(CachePolicy createMetadataCachePolicy) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * @param fieldCatalogTimeToLive how long, in milliseconds, the list of fields defined on the JIRA server is
+     *                               used before it is downloaded again
+     */
+    public JiraCacheSettings withFieldCatalogTimeToLive(long fieldCatalogTimeToLive) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * Versions, fields and create metadata are revalidated with a conditional request each time they are read.
+     * When the server sends no ETag or Last-Modified header for them, they are reused without asking
+     * the server for this long instead.
+     *
+     * @param metadataFreshness how long, in milliseconds, metadata without validators is reused
+     */
+    public JiraCacheSettings withMetadataFreshness(long metadataFreshness) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * Keep fully loaded issues outside of the Java heap, in direct buffers, instead of in the issue and query
+     * caches. Issues are decoded each time they are read.
+     */
+    public JiraCacheSettings withOffHeapIssueStore() {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     true, null, projectPrefetch);
+    }
+
+    /**
+     * Keep fully loaded issues outside of the Java heap, in a memory-mapped file.
+     *
+     * @param issueStoreFile a file for this client's exclusive use, which is overwritten
+     */
+    public JiraCacheSettings withOffHeapIssueStore(File issueStoreFile) {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     true, issueStoreFile, projectPrefetch);
+    }
+
+    /**
+     * Load every issue of the client's project in the background from the client's first lookup on, so that
+     * later lookups by key are answered from the cache. Foreground lookups take priority over the prefetch.
+     * The issue cache should be large enough to hold the whole project, or the off-heap issue store used.
+     */
+    public JiraCacheSettings withProjectPrefetch() {
+        return new JiraCacheSettings(persistentCacheDirectory, revalidationInterval,
+                                     issueCachePolicy, queryCachePolicy, createMetadataCachePolicy,
+                                     fieldCatalogTimeToLive, metadataFreshness,
+                                     offHeapIssueStore, issueStoreFile, true);
+    }
+
+    public Optional<File> getPersistentCacheDirectory() {
+        return Optional.fromNullable(persistentCacheDirectory);
+    }
+
+    public long getRevalidationInterval() {
+        return revalidationInterval;
+    }
+
+    public CachePolicy getIssueCachePolicy() {
+        return issueCachePolicy;
+    }
+
+    public CachePolicy getQueryCachePolicy() {
+        return queryCachePolicy;
+    }
+
+    public CachePolicy getCreateMetadataCachePolicy() {
+        return createMetadataCachePolicy;
+    }
+
+    public long getFieldCatalogTimeToLive() {
+        return fieldCatalogTimeToLive;
+    }
+
+    public long getMetadataFreshness() {
+        return metadataFreshness;
+    }
+
+    public boolean isOffHeapIssueStore() {
+        return offHeapIssueStore;
+    }
+
+    public Optional<File> getIssueStoreFile() {
+        return Optional.fromNullable(issueStoreFile);
+    }
+
+    public boolean isProjectPrefetch() {
+        return projectPrefetch;
+    }
+}
@@ -0,0 +1,189 @@
+package net.thucydides.plugins.jira.client;
+
+/**
+ * Connection pool, timeout and compression settings for the HTTP transport used by the JIRA REST client.
+ */
+public class JiraConnectionSettings {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+    private static final int DEFAULT_READ_TIMEOUT = 120000;
+    private static final long DEFAULT_KEEP_ALIVE = 60000;
+    private static final int DEFAULT_SEARCH_PARALLELISM = 4;
+    private static final int DEFAULT_MAX_ASYNC_REQUESTS = 10;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long keepAlive;
+    private final boolean compressionEnabled;
+    private final int searchParallelism;
+    private final int maxAsyncRequests;
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final boolean keysetPagination;
+
+    private JiraConnectionSettings(int maxConnections, int maxConnectionsPerHost,
+                                   int connectTimeout, int readTimeout,
+                                   long keepAlive, boolean compressionEnabled,
+                                   int searchParallelism, int maxAsyncRequests,
+                                   int minPageSize, int maxPageSize, boolean keysetPagination) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.keepAlive = keepAlive;
+        this.compressionEnabled = compressionEnabled;
+        this.searchParallelism = searchParallelism;
+        this.maxAsyncRequests = maxAsyncRequests;
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        this.keysetPagination = keysetPagination;
+    }
+
+    public static JiraConnectionSettings defaults() {
+        return new JiraConnectionSettings(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST,
+                                          DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT,
+                                          DEFAULT_KEEP_ALIVE, true, DEFAULT_SEARCH_PARALLELISM,
+                                          DEFAULT_MAX_ASYNC_REQUESTS, 0, 0, false);
+    }
+
+    public JiraConnectionSettings withMaxConnections(int maxConnections) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    public JiraConnectionSettings withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * @param connectTimeout connection timeout in milliseconds
+     */
+    public JiraConnectionSettings withConnectTimeout(int connectTimeout) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * @param readTimeout socket read timeout in milliseconds
+     */
+    public JiraConnectionSettings withReadTimeout(int readTimeout) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * @param keepAlive how long, in milliseconds, a pooled connection may be reused before it is closed
+     */
+    public JiraConnectionSettings withKeepAlive(long keepAlive) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    public JiraConnectionSettings withCompression(boolean compressionEnabled) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * @param searchParallelism the number of search result pages that may be downloaded at the same time
+     */
+    public JiraConnectionSettings withSearchParallelism(int searchParallelism) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * @param maxAsyncRequests the number of asynchronous requests that may be in flight at the same time.
+     *                         Further requests are queued until one of these completes.
+     */
+    public JiraConnectionSettings withMaxAsyncRequests(int maxAsyncRequests) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * Let the number of issues requested per search page vary between these bounds, growing while pages
+     * come back quickly and shrinking when they are slow or large. Without bounds, every page is requested with
+     * the client's batch size. Either way, the page size is reduced to the limit the server reports, if lower.
+     */
+    public JiraConnectionSettings withPageSizeBounds(int minPageSize, int maxPageSize) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    /**
+     * Page through the results of queries without an ORDER BY clause by issue id, asking each time for the issues
+     * after the last one seen, rather than by offset. Every page then costs the server the same, however deep into
+     * the results it is, and issues created or deleted during the load are neither repeated nor skipped.
+     * Pages are loaded one after the other, and the results come back in id order.
+     */
+    public JiraConnectionSettings withKeysetPagination(boolean keysetPagination) {
+        return new JiraConnectionSettings(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+                                          keepAlive, compressionEnabled, searchParallelism, maxAsyncRequests,
+                                          minPageSize, maxPageSize, keysetPagination);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public int getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    public int getMaxAsyncRequests() {
+        return maxAsyncRequests;
+    }
+
+    /**
+     * @return the smallest page size, or zero if the batch size is always used
+     */
+    public int getMinPageSize() {
+        return minPageSize;
+    }
+
+    /**
+     * @return the largest page size, or zero if the batch size is always used
+     */
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public boolean isKeysetPagination() {
+        return keysetPagination;
+    }
+}
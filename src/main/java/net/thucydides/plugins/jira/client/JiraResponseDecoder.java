@@ -0,0 +1,496 @@
+package net.thucydides.plugins.jira.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.domain.Version;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.model.CascadingSelectOptions;
+import net.thucydides.plugins.jira.model.CustomField;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes JIRA REST responses directly from the response stream.
+ * Issues, versions and custom fields are built as the JSON tokens are read, so a response page is never held
+ * in memory as a string or as a JSON object tree. Only the value of a registered custom field, or a single field
+ * of the create metadata, is read as a (small) tree before it is converted.
+ * The Jackson parser factory is shared, and recycles its read buffers per thread.
+ */
+class JiraResponseDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
+    private static final String JIRA_TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    private final Map<String, CustomField> registeredFieldsById;
+    private final Map<String, String> customFieldNameIndex;
+
+    JiraResponseDecoder(List<String> customFields,
+                        Map<String, CustomField> customFieldsIndex,
+                        Map<String, String> customFieldNameIndex) {
+        this.customFieldNameIndex = customFieldNameIndex;
+        this.registeredFieldsById = Maps.newHashMap();
+        for (String customFieldName : customFields) {
+            CustomField customField = customFieldsIndex.get(customFieldName);
+            if (customField != null) {
+                registeredFieldsById.put(customField.getId(), customField);
+            }
+        }
+    }
+
+    static JiraResponseDecoder withoutCustomFields() {
+        return new JiraResponseDecoder(ImmutableList.<String>of(),
+                                       Maps.<String, CustomField>newHashMap(),
+                                       Maps.<String, String>newHashMap());
+    }
+
+    public SearchResultPage readSearchPage(InputStream stream, int startAt, int defaultMaxResults)
+            throws JSONException {
+        JsonParser parser = null;
+        try {
+            parser = parserFor(stream);
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            int maxResults = defaultMaxResults;
+            int total = 0;
+            List<IssueSummary> issues = Lists.newArrayList();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals("total")) {
+                    total = parser.getValueAsInt();
+                } else if (fieldName.equals("maxResults")) {
+                    maxResults = parser.getValueAsInt();
+                } else if (fieldName.equals("issues") && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        issues.add(readIssue(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new SearchResultPage(startAt, maxResults, total, issues);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        } finally {
+            close(parser, stream);
+        }
+    }
+
+    public IssueSummary readIssue(InputStream stream) throws JSONException {
+        JsonParser parser = null;
+        try {
+            parser = parserFor(stream);
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            return readIssue(parser);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        } finally {
+            close(parser, stream);
+        }
+    }
+
+    public List<Version> readVersions(InputStream stream) throws JSONException {
+        JsonParser parser = null;
+        try {
+            parser = parserFor(stream);
+            expect(parser.nextToken(), JsonToken.START_ARRAY);
+            List<Version> versions = Lists.newArrayList();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                versions.add(readVersion(parser));
+            }
+            return versions;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        } finally {
+            close(parser, stream);
+        }
+    }
+
+    public List<CustomField> readCustomFields(InputStream stream) throws JSONException {
+        JsonParser parser = null;
+        try {
+            parser = parserFor(stream);
+            expect(parser.nextToken(), JsonToken.START_ARRAY);
+            List<CustomField> fields = Lists.newArrayList();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                fields.add(readCustomField(parser));
+            }
+            return fields;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        } finally {
+            close(parser, stream);
+        }
+    }
+
+    /**
+     * Read the option fields of every issue type of a project from a create metadata response.
+     * If the response does not list the requested project, the first project listed is used.
+     */
+    public CreateMetadata readCreateMetadata(InputStream stream, String projectKey) throws JSONException {
+        JsonParser parser = null;
+        try {
+            parser = parserFor(stream);
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            Map<String, Map<String, CascadingSelectOptions>> matchingProject = null;
+            Map<String, Map<String, CascadingSelectOptions>> firstProject = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals("projects") && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        DecodedProject project = readProject(parser);
+                        if (firstProject == null) {
+                            firstProject = project.optionsByIssueType;
+                        }
+                        if (projectKey.equalsIgnoreCase(project.key)) {
+                            matchingProject = project.optionsByIssueType;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (matchingProject != null) {
+                return new CreateMetadata(matchingProject);
+            }
+            return (firstProject != null) ? new CreateMetadata(firstProject) : CreateMetadata.EMPTY;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        } finally {
+            close(parser, stream);
+        }
+    }
+
+    private JsonParser parserFor(InputStream stream) throws IOException {
+        return JSON_FACTORY.createParser(stream);
+    }
+
+    private void expect(JsonToken token, JsonToken expectedToken) throws JSONException {
+        if (token != expectedToken) {
+            throw new JSONException("Unexpected JSON token " + token + ", expected " + expectedToken);
+        }
+    }
+
+    private void close(JsonParser parser, InputStream stream) {
+        try {
+            if (parser != null) {
+                parser.close();
+            }
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private IssueSummary readIssue(JsonParser parser) throws IOException {
+        DecodedIssue issue = new DecodedIssue();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("self")) {
+                issue.self = uriFrom(parser.getText());
+            } else if (fieldName.equals("id")) {
+                issue.id = parser.getValueAsLong();
+            } else if (fieldName.equals("key")) {
+                issue.key = parser.getText();
+            } else if (fieldName.equals("fields") && value == JsonToken.START_OBJECT) {
+                readFields(parser, issue);
+            } else if (fieldName.equals("renderedFields") && value == JsonToken.START_OBJECT) {
+                readRenderedFields(parser, issue);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return issue.toIssueSummary();
+    }
+
+    private void readFields(JsonParser parser, DecodedIssue issue) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (fieldName.equals("summary")) {
+                issue.summary = parser.getText();
+            } else if (fieldName.equals("description")) {
+                issue.description = parser.getText();
+            } else if (fieldName.equals("issuetype") && value == JsonToken.START_OBJECT) {
+                issue.type = readName(parser);
+            } else if (fieldName.equals("labels") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    issue.labels.add(parser.getText());
+                }
+            } else if (fieldName.equals("fixVersions") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    issue.fixVersions.add(readName(parser));
+                }
+            } else if (fieldName.equals("updated")) {
+                issue.updated = dateFrom(parser.getText());
+            } else if (fieldName.equals("parent") && value == JsonToken.START_OBJECT) {
+                issue.parentKey = readKey(parser);
+            } else if (registeredFieldsById.containsKey(fieldName)) {
+                CustomField customField = registeredFieldsById.get(fieldName);
+                JsonNode fieldValue = parser.readValueAsTree();
+                issue.customFieldValues.put(customField.getName(), customFieldValueOf(fieldValue, customField));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readRenderedFields(JsonParser parser, DecodedIssue issue) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (registeredFieldsById.containsKey(fieldName)) {
+                issue.renderedCustomFieldIds.add(fieldName);
+            }
+            String renderedValue = (value == JsonToken.VALUE_STRING) ? parser.getText()
+                                                                     : parser.readValueAsTree().toString();
+            String renderedFieldName = customFieldNameIndex.containsKey(fieldName) ?
+                    customFieldNameIndex.get(fieldName) : fieldName;
+            issue.renderedFieldValues.put(renderedFieldName, renderedValue);
+        }
+    }
+
+    private String readKey(JsonParser parser) throws IOException {
+        String key = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals("key")) {
+                key = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return key;
+    }
+
+    private String readName(JsonParser parser) throws IOException {
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals("name")) {
+                name = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return name;
+    }
+
+    private Object customFieldValueOf(JsonNode fieldValue, CustomField customField) {
+        if (fieldValue.isObject()) {
+            if (customField.getType().equals("string")) {
+                return fieldValue.path("value").asText();
+            } else if (customField.getType().equals("array")) {
+                return readListFrom(fieldValue);
+            }
+        }
+        return fieldValue.isTextual() ? fieldValue.asText() : fieldValue.toString();
+    }
+
+    private List<String> readListFrom(JsonNode field) {
+        List<String> values = Lists.newArrayList();
+        values.add(field.path("value").asText());
+        if (field.has("child")) {
+            values.addAll(readListFrom(field.get("child")));
+        }
+        return values;
+    }
+
+    private Version readVersion(JsonParser parser) throws IOException {
+        URI self = null;
+        Long id = null;
+        String name = null;
+        boolean archived = false;
+        boolean released = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals("self")) {
+                self = uriFrom(parser.getText());
+            } else if (fieldName.equals("id")) {
+                id = parser.getValueAsLong();
+            } else if (fieldName.equals("name")) {
+                name = parser.getText();
+            } else if (fieldName.equals("archived")) {
+                archived = parser.getValueAsBoolean();
+            } else if (fieldName.equals("released")) {
+                released = parser.getValueAsBoolean();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Version(self, id, name, archived, released);
+    }
+
+    private CustomField readCustomField(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        String type = "string";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("id")) {
+                id = parser.getText();
+            } else if (fieldName.equals("name")) {
+                name = parser.getText();
+            } else if (fieldName.equals("schema") && value == JsonToken.START_OBJECT) {
+                type = readSchemaType(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new CustomField(id, name, type);
+    }
+
+    private String readSchemaType(JsonParser parser) throws IOException {
+        String type = "string";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals("type")) {
+                type = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return type;
+    }
+
+    private DecodedProject readProject(JsonParser parser) throws IOException {
+        DecodedProject project = new DecodedProject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("key")) {
+                project.key = parser.getText();
+            } else if (fieldName.equals("issuetypes") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readIssueType(parser, project);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return project;
+    }
+
+    private void readIssueType(JsonParser parser, DecodedProject project) throws IOException {
+        String issueType = null;
+        Map<String, CascadingSelectOptions> fieldOptions = Maps.newHashMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals("name")) {
+                issueType = parser.getText();
+            } else if (fieldName.equals("fields") && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    parser.nextToken();
+                    JsonNode field = parser.readValueAsTree();
+                    JsonNode allowedValues = field.path("allowedValues");
+                    if (field.has("name") && isOptionList(allowedValues)) {
+                        fieldOptions.put(CreateMetadata.normalized(field.get("name").asText()),
+                                         new CascadingSelectOptions(optionsFrom(allowedValues, null)));
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (issueType != null) {
+            project.optionsByIssueType.put(CreateMetadata.normalized(issueType), fieldOptions);
+        }
+    }
+
+    private boolean isOptionList(JsonNode allowedValues) {
+        return allowedValues.isArray() && allowedValues.size() > 0 && allowedValues.get(0).has("value");
+    }
+
+    private List<CascadingSelectOption> optionsFrom(JsonNode allowedValues, CascadingSelectOption parentOption) {
+        List<CascadingSelectOption> options = Lists.newArrayList();
+        for (JsonNode allowedValue : allowedValues) {
+            CascadingSelectOption option = new CascadingSelectOption(allowedValue.path("value").asText(), parentOption);
+            if (allowedValue.path("children").isArray()) {
+                option.addChildren(optionsFrom(allowedValue.get("children"), option));
+            }
+            options.add(option);
+        }
+        return options;
+    }
+
+    private Date dateFrom(String timestamp) {
+        try {
+            return new SimpleDateFormat(JIRA_TIMESTAMP_FORMAT).parse(timestamp);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private URI uriFrom(String self) {
+        try {
+            return new URI(self);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Self field not a valid URL");
+        }
+    }
+
+    private static class DecodedProject {
+        String key;
+        Map<String, Map<String, CascadingSelectOptions>> optionsByIssueType = Maps.newHashMap();
+    }
+
+    /**
+     * The issue fields collected so far, in whatever order the server sends them.
+     */
+    private class DecodedIssue {
+        URI self;
+        Long id;
+        String key;
+        String summary;
+        String description;
+        String type;
+        Date updated;
+        String parentKey;
+        final List<String> labels = Lists.newArrayList();
+        final List<String> fixVersions = Lists.newArrayList();
+        final Map<String, Object> customFieldValues = Maps.newHashMap();
+        final Map<String, String> renderedFieldValues = Maps.newHashMap();
+        final Set<String> renderedCustomFieldIds = Sets.newHashSet();
+
+        IssueSummary toIssueSummary() {
+            for (String customFieldId : renderedCustomFieldIds) {
+                String customFieldName = registeredFieldsById.get(customFieldId).getName();
+                if (!customFieldValues.containsKey(customFieldName)) {
+                    customFieldValues.put(customFieldName, "");
+                }
+            }
+            return new IssueSummary(self, id, key, summary, description, renderedFieldValues, type,
+                                    labels, fixVersions, customFieldValues, updated, parentKey);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnector;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFeature;
+import org.glassfish.jersey.client.filter.HttpBasicAuthFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived HTTP transport for the JIRA REST API.
+ * The underlying Jersey client, its authentication filter and its keep-alive connection pool are created once
+ * and reused for every request made against the JIRA server.
+ * Once the server has redirected the base URL, requests are sent straight to the redirected location.
+ */
+@SuppressWarnings("deprecation")
+class JiraRestTransport {
+
+    static final String SEARCH_ENDPOINT = "rest/api/latest/search";
+    static final String ISSUE_ENDPOINT = "rest/api/2/issue/{issueKey}";
+    static final String FIELD_ENDPOINT = "rest/api/2/field";
+    static final String CREATE_METADATA_ENDPOINT = "rest/api/2/issue/createmeta";
+    static final String VERSIONS_ENDPOINT = "rest/api/latest/project/{projectKey}/versions";
+
+    private final String url;
+    private final JiraConnectionSettings settings;
+    private final PoolingClientConnectionManager connectionManager;
+    private final Client client;
+    private volatile Targets targets;
+    private final AsyncRequestQueue asyncRequests;
+
+    JiraRestTransport(String url, String username, String password, JiraConnectionSettings settings) {
+        this.url = url;
+        this.settings = settings;
+        this.connectionManager = connectionManagerFor(settings);
+        this.client = buildClient(username, password);
+        this.targets = new Targets(url);
+        this.asyncRequests = new AsyncRequestQueue(settings.getMaxAsyncRequests());
+    }
+
+    private PoolingClientConnectionManager connectionManagerFor(JiraConnectionSettings settings) {
+        PoolingClientConnectionManager manager
+                = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault(),
+                                                     settings.getKeepAlive(), TimeUnit.MILLISECONDS);
+        manager.setMaxTotal(settings.getMaxConnections());
+        manager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost());
+        return manager;
+    }
+
+    private Client buildClient(String username, String password) {
+        ClientConfig config = new ClientConfig();
+        config.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        config.property(ClientProperties.CONNECT_TIMEOUT, settings.getConnectTimeout());
+        config.property(ClientProperties.READ_TIMEOUT, settings.getReadTimeout());
+        config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, Math.max(1, settings.getMaxAsyncRequests()));
+        config.property(ClientProperties.FOLLOW_REDIRECTS, false);
+        config.register(new HttpBasicAuthFilter(username, password));
+        config.register(new RedirectFollowingFilter(url));
+        if (settings.isCompressionEnabled()) {
+            config.register(new EncodingFeature(GZipEncoder.class));
+        }
+        config.connector(new ApacheConnector(config));
+        return ClientBuilder.newClient(config);
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public JiraConnectionSettings getSettings() {
+        return settings;
+    }
+
+    public WebTarget target(String path) {
+        return targets().base.path(path);
+    }
+
+    public WebTarget searchTarget() {
+        return targets().search;
+    }
+
+    public WebTarget fieldTarget() {
+        return targets().field;
+    }
+
+    public WebTarget createMetadataTarget() {
+        return targets().createMetadata;
+    }
+
+    public WebTarget versionsTarget(String projectKey) {
+        return targets().versionsTemplate.resolveTemplate("projectKey", projectKey);
+    }
+
+    public String issuePath(String key) {
+        return UriBuilder.fromPath(ISSUE_ENDPOINT).build(key).toString();
+    }
+
+    /**
+     * Requests go straight to the location the base URL was last redirected to, if it has been redirected.
+     */
+    private Targets targets() {
+        String baseUrl = BaseUrlRedirects.resolvedBaseUrlFor(url).or(url);
+        Targets currentTargets = targets;
+        if (!currentTargets.baseUrl.equals(baseUrl)) {
+            currentTargets = new Targets(baseUrl);
+            targets = currentTargets;
+        }
+        return currentTargets;
+    }
+
+    /**
+     * Send a request asynchronously, waiting in a queue if too many asynchronous requests are already in flight.
+     */
+    public ListenableFuture<Response> submit(Invocation invocation) {
+        return asyncRequests.submit(invocation);
+    }
+
+    public void close() {
+        client.close();
+        connectionManager.shutdown();
+    }
+
+    private class Targets {
+        final String baseUrl;
+        final WebTarget base;
+        final WebTarget search;
+        final WebTarget field;
+        final WebTarget createMetadata;
+        final WebTarget versionsTemplate;
+
+        Targets(String baseUrl) {
+            this.baseUrl = baseUrl;
+            this.base = client.target(baseUrl);
+            this.search = base.path(SEARCH_ENDPOINT);
+            this.field = base.path(FIELD_ENDPOINT);
+            this.createMetadata = base.path(CREATE_METADATA_ENDPOINT);
+            this.versionsTemplate = base.path(VERSIONS_ENDPOINT);
+        }
+    }
+}
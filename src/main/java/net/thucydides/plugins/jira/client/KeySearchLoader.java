@@ -0,0 +1,27 @@
+package net.thucydides.plugins.jira.client;
+
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Looks up a batch of issues by key with a single JQL search.
+ */
+class KeySearchLoader implements Callable<Map<String, IssueSummary>> {
+    private final JerseyJiraClient jiraClient;
+    private final List<String> keys;
+    private final FieldProjection projection;
+
+    KeySearchLoader(JerseyJiraClient jiraClient, List<String> keys, FieldProjection projection) {
+        this.jiraClient = jiraClient;
+        this.keys = keys;
+        this.projection = projection;
+    }
+
+    @Override
+    public Map<String, IssueSummary> call() throws Exception {
+        return jiraClient.loadKeyBatch(keys, projection);
+    }
+}
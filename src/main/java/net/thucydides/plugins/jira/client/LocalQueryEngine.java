@@ -0,0 +1,76 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers simple JQL queries, such as {@code project = DEMO AND labels = urgent} or {@code key in (DEMO-1, DEMO-2)},
+ * from the cached results of a broader query loaded with the same projection, instead of searching again.
+ * Queries that cannot be answered this way are left to the server.
+ * Indexes are built the first time a cached result is used, and are dropped along with it.
+ */
+class LocalQueryEngine {
+
+    private static final int MAXIMUM_PARSED_QUERIES = 1000;
+
+    private final List<String> customFields;
+    private final Cache<String, Optional<JQLFilter>> parsedQueries
+            = CacheBuilder.newBuilder().maximumSize(MAXIMUM_PARSED_QUERIES).build();
+    private final Cache<SyncedQueryResult, IssueIndex> indexes = CacheBuilder.newBuilder().weakKeys().build();
+
+    LocalQueryEngine(List<String> customFields) {
+        this.customFields = ImmutableList.copyOf(customFields);
+    }
+
+    /**
+     * The results of the query, taken from the smallest cached query that covers it.
+     */
+    public Optional<List<IssueSummary>> answer(String query, FieldProjection projection,
+                                               Map<ProjectedLookup, SyncedQueryResult> cachedQueries) {
+        Optional<JQLFilter> filter = parsed(query);
+        if (!filter.isPresent()) {
+            return Optional.absent();
+        }
+        Optional<List<IssueSummary>> answer = Optional.absent();
+        for (Map.Entry<ProjectedLookup, SyncedQueryResult> cachedQuery : cachedQueries.entrySet()) {
+            if (!cachedQuery.getKey().getProjection().equals(projection)) {
+                continue;
+            }
+            Optional<JQLFilter> cachedFilter = parsed(cachedQuery.getKey().getValue());
+            if (cachedFilter.isPresent() && cachedFilter.get().covers(filter.get())) {
+                Optional<List<IssueSummary>> selected = indexOf(cachedQuery.getValue(), projection)
+                        .select(filter.get(), cachedFilter.get());
+                if (selected.isPresent() && (!answer.isPresent() || selected.get().size() < answer.get().size())) {
+                    answer = selected;
+                }
+            }
+        }
+        return answer;
+    }
+
+    private Optional<JQLFilter> parsed(String query) {
+        Optional<JQLFilter> filter = parsedQueries.getIfPresent(query);
+        if (filter == null) {
+            filter = JQLFilter.parse(query, customFields);
+            parsedQueries.put(query, filter);
+        }
+        return filter;
+    }
+
+    private IssueIndex indexOf(SyncedQueryResult result, FieldProjection projection) {
+        synchronized (result) {
+            IssueIndex index = indexes.getIfPresent(result);
+            if (index == null) {
+                index = IssueIndex.of(result.getIssues(), projection, customFields);
+                indexes.put(result, index);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.domain.IssueSummaryCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Keeps issues outside of the Java heap, in direct buffers or in a memory-mapped file, so that very large
+ * projects can be mirrored without filling the old generation with issue objects.
+ * Issues are stored in the binary form written by {@link IssueSummaryCodec} and decoded each time they are read.
+ * The only on-heap structure is an open-addressing index from issue key to record position, which costs
+ * a few bytes per issue.
+ * Storing a changed issue appends a new record and points the index at it. Once the records of earlier versions
+ * take up more space than the current ones, the store is compacted: the current records are moved to the start
+ * of the store, and the chunks left free are reused.
+ */
+class OffHeapIssueStore {
+
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final long EMPTY = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(OffHeapIssueStore.class);
+
+    private final Optional<FileChannel> mappedFile;
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks = Lists.newArrayList();
+    private int writeChunk = -1;
+    private long mappedLength;
+    private long[] slots = new long[INITIAL_SLOTS];
+    private int size;
+    private long liveBytes;
+    private long garbageBytes;
+    private int compactions;
+
+    private OffHeapIssueStore(Optional<FileChannel> mappedFile, int chunkSize) {
+        this.mappedFile = mappedFile;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * A store kept in direct buffers, which lasts as long as the client.
+     */
+    static OffHeapIssueStore inDirectMemory() {
+        return inDirectMemory(CHUNK_SIZE);
+    }
+
+    static OffHeapIssueStore inDirectMemory(int chunkSize) {
+        return new OffHeapIssueStore(Optional.<FileChannel>absent(), chunkSize);
+    }
+
+    /**
+     * A store kept in a memory-mapped file, which lets the operating system page issues out under memory pressure.
+     * Any previous content of the file is discarded.
+     */
+    static OffHeapIssueStore mappedTo(File file) throws IOException {
+        return mappedTo(file, CHUNK_SIZE);
+    }
+
+    static OffHeapIssueStore mappedTo(File file, int chunkSize) throws IOException {
+        RandomAccessFile storeFile = new RandomAccessFile(file, "rw");
+        storeFile.setLength(0);
+        return new OffHeapIssueStore(Optional.of(storeFile.getChannel()), chunkSize);
+    }
+
+    public Optional<IssueSummary> get(String key) {
+        byte[] encodedIssue;
+        synchronized (this) {
+            long position = positionOf(key);
+            if (position == EMPTY) {
+                return Optional.absent();
+            }
+            encodedIssue = encodedIssueAt(position);
+        }
+        return Optional.of(decoded(encodedIssue));
+    }
+
+    public synchronized boolean contains(String key) {
+        return slots[slotOf(key)] != EMPTY;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The space taken up by the chunks of the store, whether in use or free.
+     */
+    synchronized long getAllocatedBytes() {
+        long allocatedBytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            allocatedBytes += chunk.capacity();
+        }
+        return allocatedBytes;
+    }
+
+    /**
+     * Store an issue, unless the same version of it is already stored.
+     */
+    public void put(IssueSummary issue) {
+        byte[] encodedIssue;
+        try {
+            encodedIssue = IssueSummaryCodec.encode(issue);
+        } catch (IOException e) {
+            logger.warn("Could not store issue {}", issue.getKey(), e);
+            return;
+        }
+        byte[] key = issue.getKey().getBytes(Charsets.UTF_8);
+        byte[] record = ByteBuffer.allocate(8 + key.length + encodedIssue.length)
+                                  .putInt(key.length).put(key).putInt(encodedIssue.length).put(encodedIssue)
+                                  .array();
+        synchronized (this) {
+            int slot = slotOf(issue.getKey());
+            if (slots[slot] == EMPTY) {
+                size++;
+            } else if (Arrays.equals(encodedIssueAt(slots[slot]), encodedIssue)) {
+                return;
+            } else {
+                int previousLength = recordLengthAt(slots[slot]);
+                liveBytes -= previousLength;
+                garbageBytes += previousLength;
+            }
+            slots[slot] = append(record);
+            liveBytes += record.length;
+            if (size * 2 > slots.length) {
+                resize();
+            }
+            if (garbageBytes > chunkSize && garbageBytes > liveBytes) {
+                compact();
+            }
+        }
+    }
+
+    public void putAll(Iterable<IssueSummary> issues) {
+        for (IssueSummary issue : issues) {
+            put(issue);
+        }
+    }
+
+    /**
+     * A read-only list of the given issues, which holds only their keys and record positions, and decodes each
+     * issue when it is read. The list keeps the versions stored when it was created, even if the issues are
+     * stored again later, until the store is compacted. After that it reads the current version of each issue.
+     */
+    public List<IssueSummary> viewOf(List<IssueSummary> issues) {
+        putAll(issues);
+        String[] keys = new String[issues.size()];
+        long[] positions = new long[issues.size()];
+        synchronized (this) {
+            for (int i = 0; i < positions.length; i++) {
+                keys[i] = issues.get(i).getKey();
+                positions[i] = positionOf(keys[i]);
+            }
+            return new StoredIssues(keys, positions, compactions);
+        }
+    }
+
+    public void close() {
+        if (mappedFile.isPresent()) {
+            try {
+                mappedFile.get().close();
+            } catch (IOException e) {
+                logger.warn("Could not close the issue store", e);
+            }
+        }
+    }
+
+    private synchronized long positionOf(String key) {
+        return slots[slotOf(key)];
+    }
+
+    private IssueSummary decoded(byte[] encodedIssue) {
+        try {
+            return IssueSummaryCodec.decode(encodedIssue);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read a stored issue", e);
+        }
+    }
+
+    /**
+     * Records are laid out as the key length, the key, the issue length and the encoded issue.
+     * Positions are stored as the chunk index in the upper 32 bits and the offset plus one in the lower 32 bits,
+     * so that no valid position is zero.
+     */
+    private synchronized byte[] encodedIssueAt(long position) {
+        ByteBuffer record = recordAt(position);
+        int keyLength = record.getInt();
+        record.position(record.position() + keyLength);
+        byte[] encodedIssue = new byte[record.getInt()];
+        record.get(encodedIssue);
+        return encodedIssue;
+    }
+
+    private int recordLengthAt(long position) {
+        ByteBuffer record = recordAt(position);
+        int keyLength = record.getInt();
+        record.position(record.position() + keyLength);
+        return 8 + keyLength + record.getInt();
+    }
+
+    private synchronized boolean hasKey(long position, byte[] key) {
+        ByteBuffer record = recordAt(position);
+        if (record.getInt() != key.length) {
+            return false;
+        }
+        for (byte keyByte : key) {
+            if (record.get() != keyByte) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer recordAt(long position) {
+        ByteBuffer record = chunks.get((int) (position >>> 32)).duplicate();
+        record.position((int) (position & 0xFFFFFFFFL) - 1);
+        return record;
+    }
+
+    private long append(byte[] record) {
+        if (writeChunk < 0 || chunks.get(writeChunk).remaining() < record.length) {
+            nextWriteChunk(record.length);
+        }
+        ByteBuffer chunk = chunks.get(writeChunk);
+        long position = ((long) writeChunk << 32) | (chunk.position() + 1);
+        chunk.put(record);
+        return position;
+    }
+
+    /**
+     * Move on to the next chunk, reusing one left free by compaction if the record fits in it.
+     */
+    private void nextWriteChunk(int recordLength) {
+        writeChunk++;
+        if (writeChunk == chunks.size()) {
+            chunks.add(allocate(Math.max(chunkSize, recordLength)));
+        } else if (chunks.get(writeChunk).capacity() < recordLength) {
+            chunks.set(writeChunk, allocate(recordLength));
+        } else {
+            chunks.get(writeChunk).clear();
+        }
+    }
+
+    /**
+     * Copy the current record of every issue, in the order they were written, to the start of the store.
+     * A record is always copied to a position at or before its own, so no record is overwritten before
+     * it has been copied.
+     */
+    private void compact() {
+        long[] positions = new long[size];
+        int live = 0;
+        for (long position : slots) {
+            if (position != EMPTY) {
+                positions[live++] = position;
+            }
+        }
+        Arrays.sort(positions);
+        writeChunk = -1;
+        for (int i = 0; i < positions.length; i++) {
+            ByteBuffer source = recordAt(positions[i]);
+            byte[] record = new byte[recordLengthAt(positions[i])];
+            source.get(record);
+            positions[i] = append(record);
+        }
+        slots = new long[slots.length];
+        reindex(positions);
+        garbageBytes = 0;
+        compactions++;
+    }
+
+    private ByteBuffer allocate(int chunkSize) {
+        if (!mappedFile.isPresent()) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        try {
+            ByteBuffer chunk = mappedFile.get().map(FileChannel.MapMode.READ_WRITE, mappedLength, chunkSize);
+            mappedLength += chunkSize;
+            return chunk;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not extend the issue store", e);
+        }
+    }
+
+    /**
+     * The slot holding the key, or the empty slot where it would go.
+     */
+    private int slotOf(String key) {
+        byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+        int mask = slots.length - 1;
+        int slot = spread(key.hashCode()) & mask;
+        while (slots[slot] != EMPTY && !hasKey(slots[slot], keyBytes)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] previousSlots = slots;
+        slots = new long[previousSlots.length * 2];
+        reindex(previousSlots);
+    }
+
+    private void reindex(long[] positions) {
+        int mask = slots.length - 1;
+        for (long position : positions) {
+            if (position != EMPTY) {
+                int slot = spread(keyAt(position).hashCode()) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = position;
+            }
+        }
+    }
+
+    private String keyAt(long position) {
+        ByteBuffer record = recordAt(position);
+        byte[] key = new byte[record.getInt()];
+        record.get(key);
+        return new String(key, Charsets.UTF_8);
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x45d9f3b;
+    }
+
+    private class StoredIssues extends AbstractList<IssueSummary> implements RandomAccess {
+        private final String[] keys;
+        private final long[] positions;
+        private final int compactionsSoFar;
+
+        StoredIssues(String[] keys, long[] positions, int compactionsSoFar) {
+            this.keys = keys;
+            this.positions = positions;
+            this.compactionsSoFar = compactionsSoFar;
+        }
+
+        @Override
+        public IssueSummary get(int index) {
+            byte[] encodedIssue;
+            synchronized (OffHeapIssueStore.this) {
+                long position = (compactions == compactionsSoFar) ? positions[index] : positionOf(keys[index]);
+                encodedIssue = encodedIssueAt(position);
+            }
+            return decoded(encodedIssue);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+}
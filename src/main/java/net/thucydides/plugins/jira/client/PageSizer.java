@@ -0,0 +1,60 @@
+package net.thucydides.plugins.jira.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses how many issues to ask for in each search request.
+ * Many JIRA instances cap maxResults below what is asked for, and echo the cap back in the response, so the page
+ * size never exceeds the cap once it has been seen. Within the configured bounds, the page size is doubled while
+ * full pages come back quickly and are small, and halved when a page is slow or large.
+ */
+class PageSizer {
+
+    private static final long TARGET_PAGE_TIME = 2000;
+    private static final long TARGET_PAGE_BYTES = 4 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(PageSizer.class);
+
+    private final int minimumPageSize;
+    private final int maximumPageSize;
+    private int serverLimit = Integer.MAX_VALUE;
+    private int pageSize;
+
+    PageSizer(int initialPageSize, int minimumPageSize, int maximumPageSize) {
+        this.minimumPageSize = Math.max(1, Math.min(minimumPageSize, maximumPageSize));
+        this.maximumPageSize = Math.max(this.minimumPageSize, maximumPageSize);
+        this.pageSize = bounded(initialPageSize);
+    }
+
+    public synchronized int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Adjust the page size after a search page has been read.
+     *
+     * @param requested the maxResults the page was requested with
+     * @param elapsed   how long, in milliseconds, the page took to arrive and be read
+     * @param bytes     the size of the response body
+     */
+    public synchronized void pageLoaded(int requested, SearchResultPage page, long elapsed, long bytes) {
+        if (page.getMaxResults() > 0 && page.getMaxResults() < requested && page.getMaxResults() < serverLimit) {
+            serverLimit = page.getMaxResults();
+            logger.debug("JIRA returns at most {} issues per search page", serverLimit);
+        }
+        boolean fullPage = page.getIssues().size() >= Math.min(requested, serverLimit)
+                && page.getStartAt() + page.getIssues().size() < page.getTotal();
+        if (elapsed > TARGET_PAGE_TIME || bytes > TARGET_PAGE_BYTES) {
+            pageSize = bounded(pageSize / 2);
+        } else if (fullPage && elapsed < TARGET_PAGE_TIME / 4 && bytes < TARGET_PAGE_BYTES / 4) {
+            pageSize = bounded(pageSize * 2);
+        } else {
+            pageSize = bounded(pageSize);
+        }
+    }
+
+    private int bounded(int size) {
+        return Math.min(serverLimit, Math.max(minimumPageSize, Math.min(size, maximumPageSize)));
+    }
+}
@@ -0,0 +1,139 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import net.thucydides.plugins.jira.domain.CustomFieldCast;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How child issues refer to their parents, for loading issue hierarchies: a JQL template that finds the children
+ * of a set of parents, and the field of each child that holds its parent's key.
+ * Trees whose levels are linked in different ways, such as epics, stories and sub-tasks, combine their links
+ * with {@link #anyOf(ParentLink...)}.
+ */
+public class ParentLink {
+
+    /**
+     * Stands for the quoted, comma-separated parent keys in a query template.
+     */
+    public static final String KEYS = "{keys}";
+
+    private static final Pattern LINKED_KEY = Pattern.compile("\"key\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final String queryTemplate;
+    private final String fieldName;
+    private final boolean customField;
+    private final List<ParentLink> alternatives;
+
+    private ParentLink(String queryTemplate, String fieldName, boolean customField) {
+        Preconditions.checkArgument(queryTemplate.contains(KEYS), "The query template must contain " + KEYS);
+        this.queryTemplate = queryTemplate;
+        this.fieldName = fieldName;
+        this.customField = customField;
+        this.alternatives = ImmutableList.of();
+    }
+
+    private ParentLink(List<ParentLink> alternatives) {
+        List<String> queryTemplates = Lists.newArrayList();
+        for (ParentLink alternative : alternatives) {
+            queryTemplates.add("(" + alternative.queryTemplate + ")");
+        }
+        this.queryTemplate = Joiner.on(" OR ").join(queryTemplates);
+        this.fieldName = null;
+        this.customField = false;
+        this.alternatives = ImmutableList.copyOf(alternatives);
+    }
+
+    /**
+     * Stories and the epics they belong to.
+     */
+    public static ParentLink epicLink() {
+        return customField("Epic Link");
+    }
+
+    /**
+     * Sub-tasks and their parent issues.
+     */
+    public static ParentLink parent() {
+        return new ParentLink("parent in (" + KEYS + ")", "parent", false);
+    }
+
+    /**
+     * Children that refer to their parent through a custom field.
+     * The client must be using the custom field (see {@link JerseyJiraClient#usingCustomFields(List)}).
+     */
+    public static ParentLink customField(String fieldName) {
+        return customField(fieldName, "\"" + fieldName + "\" in (" + KEYS + ")");
+    }
+
+    /**
+     * Children that refer to their parent through a custom field, found with a query of their own,
+     * such as <code>issueFunction in linkedIssuesOf("key in ({keys})", "is parent of")</code>.
+     */
+    public static ParentLink customField(String fieldName, String queryTemplate) {
+        return new ParentLink(queryTemplate, fieldName, true);
+    }
+
+    /**
+     * Children linked to their parents in any of the given ways, found with a single query.
+     */
+    public static ParentLink anyOf(ParentLink... links) {
+        Preconditions.checkArgument(links.length > 0, "At least one parent link is needed");
+        return (links.length == 1) ? links[0] : new ParentLink(ImmutableList.copyOf(links));
+    }
+
+    String childrenOf(List<String> parentKeys) {
+        return queryTemplate.replace(KEYS, JQLClauses.keyList(parentKeys));
+    }
+
+    /**
+     * The parent key of a sub-task is read from its parent, and that of other children from the field's text,
+     * or from the "key" attribute of a linked issue.
+     */
+    Optional<String> parentOf(IssueSummary child) {
+        for (ParentLink alternative : alternatives) {
+            Optional<String> parentKey = alternative.parentOf(child);
+            if (parentKey.isPresent()) {
+                return parentKey;
+            }
+        }
+        if (fieldName == null) {
+            return Optional.absent();
+        }
+        if (!customField) {
+            return child.getParentKey();
+        }
+        Optional<CustomFieldCast> link = child.customField(fieldName);
+        if (!link.isPresent() || link.get().value() == null) {
+            return Optional.absent();
+        }
+        String value = link.get().value().toString();
+        Matcher linkedKey = LINKED_KEY.matcher(value);
+        return Optional.of(linkedKey.find() ? linkedKey.group(1) : value);
+    }
+
+    /**
+     * The projection, extended to request the field that links a child to its parent.
+     */
+    FieldProjection projectionFor(FieldProjection projection) {
+        for (ParentLink alternative : alternatives) {
+            projection = alternative.projectionFor(projection);
+        }
+        if (fieldName == null) {
+            return projection;
+        }
+        return customField ? projection.withCustomFields() : projection.withFields(fieldName);
+    }
+
+    @Override
+    public String toString() {
+        return (fieldName == null) ? queryTemplate : fieldName + ": " + queryTemplate;
+    }
+}
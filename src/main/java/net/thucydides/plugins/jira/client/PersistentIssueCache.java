@@ -0,0 +1,266 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.domain.IssueSummaryCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A directory of issue summaries that outlives the JVM, so that forked test JVMs and successive builds
+ * do not need to download the same issues again.
+ * Each issue is stored in its own file, in the binary form written by {@link IssueSummaryCodec}.
+ * Issue files are written to a temporary file and then renamed, so readers never see a partly written issue
+ * and do not need to take a lock. Revalidation, which evicts issues updated on the server since they were stored
+ * and issues the server no longer has under their key, holds an exclusive lock on the directory so that only
+ * one JVM revalidates at a time.
+ */
+class PersistentIssueCache {
+
+    private static final String ISSUE_SUFFIX = ".issue";
+    private static final String LOCK_FILE = "cache.lock";
+    private static final String METADATA_FILE = "cache.properties";
+    private static final String VALIDATED_AT = "validatedAt";
+    private static final Pattern SAFE_KEY = Pattern.compile("[A-Za-z0-9_.\\-]+");
+
+    private static final Map<File, PersistentIssueCache> OPEN_CACHES = Maps.newHashMap();
+
+    private final Logger logger = LoggerFactory.getLogger(PersistentIssueCache.class);
+
+    private final File directory;
+
+    /**
+     * When this cache was last known to be revalidated, by this JVM or another one.
+     */
+    private volatile long validatedAt;
+
+    private PersistentIssueCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Caches are shared by every client in the JVM that uses the same directory.
+     */
+    static synchronized PersistentIssueCache inDirectory(File directory) {
+        File cacheDirectory = directory.getAbsoluteFile();
+        PersistentIssueCache cache = OPEN_CACHES.get(cacheDirectory);
+        if (cache == null) {
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+                throw new IllegalArgumentException("Could not create the issue cache directory " + cacheDirectory);
+            }
+            cache = new PersistentIssueCache(cacheDirectory);
+            OPEN_CACHES.put(cacheDirectory, cache);
+        }
+        return cache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public Optional<IssueSummary> get(String key) {
+        File issueFile = issueFileFor(key);
+        if (issueFile == null || !issueFile.isFile()) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(IssueSummaryCodec.decode(Files.readAllBytes(issueFile.toPath())));
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable cached issue {}", key, e);
+            issueFile.delete();
+            return Optional.absent();
+        }
+    }
+
+    public void put(IssueSummary issue) {
+        File issueFile = issueFileFor(issue.getKey());
+        if (issueFile == null) {
+            return;
+        }
+        File temporaryFile = null;
+        try {
+            temporaryFile = File.createTempFile(issue.getKey(), ".tmp", directory);
+            Files.write(temporaryFile.toPath(), IssueSummaryCodec.encode(issue));
+            Files.move(temporaryFile.toPath(), issueFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not cache issue {}", issue.getKey(), e);
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    public void evict(String key) {
+        File issueFile = issueFileFor(key);
+        if (issueFile != null) {
+            issueFile.delete();
+        }
+    }
+
+    public Set<String> keys() {
+        Set<String> keys = Sets.newHashSet();
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(ISSUE_SUFFIX)) {
+                    keys.add(fileName.substring(0, fileName.length() - ISSUE_SUFFIX.length()));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Check the cached issues against the server, unless another client or JVM has done so within the given interval.
+     * While the last revalidation seen by this JVM is recent enough, this returns without locking or reading
+     * anything on disk, so only lookups that may be due for a revalidation wait for other JVMs.
+     *
+     * @param revalidationInterval how long, in milliseconds, a revalidation stays good for
+     * @param revalidation finds the issues updated on the server since the previous revalidation,
+     *                     and those still there
+     */
+    public void revalidateIfDue(long revalidationInterval, Revalidation revalidation) throws IOException {
+        if (System.currentTimeMillis() - validatedAt < revalidationInterval) {
+            return;
+        }
+        revalidateUnderLock(revalidationInterval, revalidation);
+    }
+
+    private synchronized void revalidateUnderLock(long revalidationInterval, Revalidation revalidation)
+            throws IOException {
+        if (System.currentTimeMillis() - validatedAt < revalidationInterval) {
+            return;
+        }
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+        try {
+            FileChannel channel = lockFile.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                Properties metadata = readMetadata();
+                long now = System.currentTimeMillis();
+                long storedValidatedAt = Long.parseLong(metadata.getProperty(VALIDATED_AT, "0"));
+                if (now - storedValidatedAt < revalidationInterval) {
+                    validatedAt = storedValidatedAt;
+                    return;
+                }
+                Set<String> cachedKeys = keys();
+                if (!cachedKeys.isEmpty()) {
+                    long since = (storedValidatedAt > 0) ? storedValidatedAt : oldestIssueFileTime();
+                    evictUpdatedIssues(cachedKeys, revalidation.issuesUpdatedSince(cachedKeys, since));
+                    evictMissingIssues(cachedKeys, revalidation.existingKeys(cachedKeys));
+                }
+                metadata.setProperty(VALIDATED_AT, Long.toString(now));
+                writeMetadata(metadata);
+                validatedAt = now;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    private void evictUpdatedIssues(Set<String> cachedKeys, Iterable<IssueSummary> updatedIssues) {
+        for (IssueSummary updatedIssue : updatedIssues) {
+            if (cachedKeys.contains(updatedIssue.getKey()) && isStale(updatedIssue)) {
+                evict(updatedIssue.getKey());
+            }
+        }
+    }
+
+    /**
+     * Issues deleted on the server, or moved to another project and so given another key, are not found again.
+     */
+    private void evictMissingIssues(Set<String> cachedKeys, Set<String> existingKeys) {
+        for (String key : cachedKeys) {
+            if (!existingKeys.contains(key)) {
+                evict(key);
+            }
+        }
+    }
+
+    private long oldestIssueFileTime() {
+        long oldest = System.currentTimeMillis();
+        for (String key : keys()) {
+            oldest = Math.min(oldest, issueFileFor(key).lastModified());
+        }
+        return oldest;
+    }
+
+    private boolean isStale(IssueSummary updatedIssue) {
+        Optional<IssueSummary> cachedIssue = get(updatedIssue.getKey());
+        if (!cachedIssue.isPresent()) {
+            return false;
+        }
+        if (!cachedIssue.get().getUpdated().isPresent() || !updatedIssue.getUpdated().isPresent()) {
+            return true;
+        }
+        return cachedIssue.get().getUpdated().get().before(updatedIssue.getUpdated().get());
+    }
+
+    private Properties readMetadata() throws IOException {
+        Properties metadata = new Properties();
+        File metadataFile = new File(directory, METADATA_FILE);
+        if (metadataFile.isFile()) {
+            InputStream in = new FileInputStream(metadataFile);
+            try {
+                metadata.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return metadata;
+    }
+
+    private void writeMetadata(Properties metadata) throws IOException {
+        OutputStream out = new FileOutputStream(new File(directory, METADATA_FILE));
+        try {
+            metadata.store(out, "JIRA issue cache");
+        } finally {
+            out.close();
+        }
+    }
+
+    private File issueFileFor(String key) {
+        if (key == null || !SAFE_KEY.matcher(key).matches()) {
+            return null;
+        }
+        return new File(directory, key + ISSUE_SUFFIX);
+    }
+
+    /**
+     * Asks the JIRA server which of the cached issues have changed.
+     */
+    interface Revalidation {
+        /**
+         * @param cachedKeys the keys of the issues currently in the cache
+         * @param since the local time of the previous revalidation, in milliseconds
+         */
+        Iterable<IssueSummary> issuesUpdatedSince(Set<String> cachedKeys, long since) throws IOException;
+
+        /**
+         * @param cachedKeys the keys of the issues currently in the cache
+         * @return those of the keys that the server still has an issue under
+         */
+        Set<String> existingKeys(Set<String> cachedKeys) throws IOException;
+    }
+}
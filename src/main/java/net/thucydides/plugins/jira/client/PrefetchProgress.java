@@ -0,0 +1,37 @@
+package net.thucydides.plugins.jira.client;
+
+/**
+ * How far the background load of the client's project has got.
+ */
+public class PrefetchProgress {
+
+    private final int loadedIssues;
+    private final int totalIssues;
+    private final boolean complete;
+
+    PrefetchProgress(int loadedIssues, int totalIssues, boolean complete) {
+        this.loadedIssues = loadedIssues;
+        this.totalIssues = totalIssues;
+        this.complete = complete;
+    }
+
+    public int getLoadedIssues() {
+        return loadedIssues;
+    }
+
+    /**
+     * @return the number of issues in the project, or zero until the first page has been loaded
+     */
+    public int getTotalIssues() {
+        return totalIssues;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return loadedIssues + "/" + totalIssues + " issues" + (complete ? " (complete)" : "");
+    }
+}
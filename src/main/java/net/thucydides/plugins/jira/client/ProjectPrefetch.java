@@ -0,0 +1,288 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Loads every issue of a project, one search page at a time, on a low-priority background thread.
+ * The thread is started by the client's first lookup, or the first request for the progress, rather than while
+ * the client is still being constructed.
+ * Pages are requested in id order, as the issues after the last one loaded. That id is kept as a checkpoint,
+ * so that a failed page is retried from where the load stopped rather than from the start, and issues created
+ * or deleted during the load are neither repeated nor skipped.
+ * A failed page is retried a few times, backing off between attempts, but the load is given up at once
+ * when the server rejects the user or cannot be found, as retrying will not help.
+ * When the client has a persistent cache, the prefetched issues are stored there and the checkpoint is saved
+ * alongside them, so a later JVM carries on from the last issue loaded and only requests the issues created since.
+ * No new page is requested while a foreground lookup is running, and a lookup for an issue of the project that
+ * is not cached yet first waits for the page in flight, which may well contain it.
+ */
+class ProjectPrefetch implements Runnable {
+
+    private static final long INITIAL_RETRY_DELAY = 1000;
+    private static final long MAXIMUM_RETRY_DELAY = 60000;
+    private static final int MAXIMUM_ATTEMPTS = 8;
+    private static final String LAST_LOADED_ID = "lastLoadedId";
+    private static final String LOADED_ISSUES = "loadedIssues";
+
+    private final Logger logger = LoggerFactory.getLogger(ProjectPrefetch.class);
+
+    private final JerseyJiraClient client;
+    private final String project;
+    private final String query;
+    private final Optional<File> checkpointFile;
+    private Thread thread;
+
+    private int foregroundLookups;
+    private boolean pageInFlight;
+    private Optional<Long> checkpoint = Optional.absent();
+    private int loadedIssues;
+    private int totalIssues;
+    private boolean complete;
+    private boolean stopped;
+
+    private ProjectPrefetch(JerseyJiraClient client, String project, Optional<File> checkpointFile) {
+        this.client = client;
+        this.project = project;
+        this.query = JQLClauses.projectIs(project);
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * A prefetch that starts when it is first used.
+     *
+     * @param checkpointFile where the checkpoint is kept between JVMs, if anywhere
+     */
+    static ProjectPrefetch of(JerseyJiraClient client, String project, Optional<File> checkpointFile) {
+        return new ProjectPrefetch(client, project, checkpointFile);
+    }
+
+    private synchronized void startIfNeeded() {
+        if (thread != null || stopped) {
+            return;
+        }
+        thread = new ThreadFactoryBuilder().setDaemon(true)
+                                           .setPriority(Thread.MIN_PRIORITY)
+                                           .setNameFormat("jira-prefetch-" + project)
+                                           .build()
+                                           .newThread(this);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        long retryDelay = INITIAL_RETRY_DELAY;
+        int failedAttempts = 0;
+        restoreCheckpoint();
+        while (awaitTurn()) {
+            try {
+                SearchResultPage page = client.loadPageAfter(query, FieldProjection.ALL, getCheckpoint());
+                client.prefetched(page.getIssues());
+                pageLoaded(page);
+                saveCheckpoint();
+                retryDelay = INITIAL_RETRY_DELAY;
+                failedAttempts = 0;
+            } catch (JIRAAuthenticationError e) {
+                giveUp(e);
+            } catch (JIRAConfigurationError e) {
+                giveUp(e);
+            } catch (JSONException e) {
+                retryDelay = retryAfterFailure(e, retryDelay, ++failedAttempts);
+            } catch (RuntimeException e) {
+                retryDelay = retryAfterFailure(e, retryDelay, ++failedAttempts);
+            }
+        }
+    }
+
+    /**
+     * Wait until no foreground lookup is running, then mark a page as being in flight.
+     *
+     * @return false if the load is complete or has been stopped
+     */
+    private synchronized boolean awaitTurn() {
+        try {
+            while (foregroundLookups > 0 && !stopped) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+        }
+        pageInFlight = !(complete || stopped);
+        return pageInFlight;
+    }
+
+    private synchronized Optional<Long> getCheckpoint() {
+        return checkpoint;
+    }
+
+    private void restoreCheckpoint() {
+        if (!checkpointFile.isPresent() || !checkpointFile.get().isFile()) {
+            return;
+        }
+        Properties saved = new Properties();
+        try {
+            InputStream in = new FileInputStream(checkpointFile.get());
+            try {
+                saved.load(in);
+            } finally {
+                in.close();
+            }
+            synchronized (this) {
+                if (saved.containsKey(LAST_LOADED_ID)) {
+                    checkpoint = Optional.of(Long.parseLong(saved.getProperty(LAST_LOADED_ID)));
+                    loadedIssues = Integer.parseInt(saved.getProperty(LOADED_ISSUES, "0"));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the prefetch checkpoint " + checkpointFile.get() + ", starting again", e);
+        } catch (NumberFormatException e) {
+            logger.warn("Could not read the prefetch checkpoint " + checkpointFile.get() + ", starting again", e);
+        }
+    }
+
+    /**
+     * The checkpoint is written to a temporary file and then renamed, so a JVM starting up never reads half of it.
+     */
+    private void saveCheckpoint() {
+        if (!checkpointFile.isPresent()) {
+            return;
+        }
+        Properties saved = new Properties();
+        synchronized (this) {
+            if (!checkpoint.isPresent()) {
+                return;
+            }
+            saved.setProperty(LAST_LOADED_ID, Long.toString(checkpoint.get()));
+            saved.setProperty(LOADED_ISSUES, Integer.toString(loadedIssues));
+        }
+        File directory = checkpointFile.get().getParentFile();
+        File temporaryFile = null;
+        try {
+            temporaryFile = File.createTempFile(checkpointFile.get().getName(), ".tmp", directory);
+            OutputStream out = new FileOutputStream(temporaryFile);
+            try {
+                saved.store(out, "JIRA project prefetch of " + project);
+            } finally {
+                out.close();
+            }
+            Files.move(temporaryFile.toPath(), checkpointFile.get().toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the prefetch checkpoint " + checkpointFile.get(), e);
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    /**
+     * The total reported with a page counts the issues from that page on.
+     */
+    private synchronized void pageLoaded(SearchResultPage page) {
+        totalIssues = loadedIssues + page.getTotal();
+        loadedIssues += page.getIssues().size();
+        complete = JerseyJiraClient.isLastPageInIdOrder(page);
+        if (!page.getIssues().isEmpty()) {
+            checkpoint = JerseyJiraClient.lastIdOn(page);
+        }
+        pageInFlight = false;
+        notifyAll();
+        logger.debug("Prefetched {} of project {}", getProgress(), project);
+    }
+
+    /**
+     * Only the first failure in a row is logged as a warning, with its stack trace; the retries are logged at debug.
+     */
+    private long retryAfterFailure(Exception failure, long retryDelay, int failedAttempts) {
+        synchronized (this) {
+            pageInFlight = false;
+            notifyAll();
+            if (stopped) {
+                return retryDelay;
+            }
+        }
+        if (failedAttempts >= MAXIMUM_ATTEMPTS) {
+            giveUp(failure);
+            return retryDelay;
+        }
+        if (failedAttempts == 1) {
+            logger.warn("Could not prefetch the issues of project " + project + ", retrying after "
+                        + loadedIssues + " issues", failure);
+        } else {
+            logger.debug("Prefetch of project {} failed again ({} attempts): {}",
+                         new Object[] {project, failedAttempts, failure.getMessage()});
+        }
+        try {
+            Thread.sleep(retryDelay);
+        } catch (InterruptedException e) {
+            stop();
+        }
+        return Math.min(retryDelay * 2, MAXIMUM_RETRY_DELAY);
+    }
+
+    private void giveUp(Exception failure) {
+        logger.warn("Gave up prefetching the issues of project " + project + " after " + loadedIssues
+                    + " issues: " + failure.getMessage());
+        synchronized (this) {
+            stopped = true;
+            pageInFlight = false;
+            notifyAll();
+        }
+    }
+
+    synchronized void foregroundLookupStarted() {
+        foregroundLookups++;
+        startIfNeeded();
+    }
+
+    synchronized void foregroundLookupFinished() {
+        foregroundLookups--;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the page being loaded, if any, when the issue belongs to the prefetched project.
+     */
+    synchronized void awaitPageInFlight(String key) {
+        if (!key.startsWith(project + "-")) {
+            return;
+        }
+        try {
+            while (pageInFlight) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized PrefetchProgress getProgress() {
+        startIfNeeded();
+        return new PrefetchProgress(loadedIssues, totalIssues, complete);
+    }
+
+    public void stop() {
+        Thread startedThread;
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+            startedThread = thread;
+        }
+        if (startedThread != null) {
+            startedThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A cache key made of an issue key or JQL query and the field projection it was loaded with.
+ * Queries are compared in their canonical form, but are sent to the server as they were written.
+ * Clients with different custom fields share their caches, so lookups that include custom fields
+ * also name the field set they were loaded with.
+ */
+class ProjectedLookup {
+    private final String value;
+    private final FieldProjection projection;
+    private final List<String> fieldSet;
+    private final String query;
+
+    ProjectedLookup(String value, FieldProjection projection) {
+        this(value, projection, ImmutableList.<String>of());
+    }
+
+    ProjectedLookup(String value, FieldProjection projection, List<String> customFields) {
+        this(value, projection, fieldSetFor(projection, customFields), value);
+    }
+
+    private ProjectedLookup(String value, FieldProjection projection, List<String> fieldSet, String query) {
+        this.value = value;
+        this.projection = projection;
+        this.fieldSet = fieldSet;
+        this.query = query;
+    }
+
+    static ProjectedLookup ofQuery(String query, FieldProjection projection, List<String> customFields) {
+        return new ProjectedLookup(JQLCanonicalForm.of(query), projection, fieldSetFor(projection, customFields),
+                                   query);
+    }
+
+    private static List<String> fieldSetFor(FieldProjection projection, List<String> customFields) {
+        return projection.includesCustomFields() ? ImmutableList.copyOf(customFields) : ImmutableList.<String>of();
+    }
+
+    /**
+     * A lookup for another issue, with the same projection and field set.
+     */
+    ProjectedLookup forKey(String key) {
+        return new ProjectedLookup(key, projection, fieldSet, key);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * The JQL query as it was written, which is what the server is asked.
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public FieldProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the custom fields the issues were decoded with, or an empty list if none were requested
+     */
+    public List<String> getFieldSet() {
+        return fieldSet;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProjectedLookup that = (ProjectedLookup) o;
+        return value.equals(that.value) && projection.equals(that.projection) && fieldSet.equals(that.fieldSet);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(value, projection, fieldSet);
+    }
+
+    @Override
+    public String toString() {
+        return value + " " + projection + (fieldSet.isEmpty() ? "" : " " + fieldSet);
+    }
+}
@@ -0,0 +1,131 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Follows redirects from the JIRA server. When the server permanently moves a resource to the same path under
+ * a new base URL, the new base URL is remembered in {@link BaseUrlRedirects}, so that later requests go straight
+ * to the new location. Any other redirect, such as to a login page, is only followed for the request it answers.
+ * The original request is repeated with its method, query parameters and body, which the HTTP connector
+ * does not do when it follows redirects on its own.
+ */
+class RedirectFollowingFilter implements ClientResponseFilter {
+
+    private static final Set<Integer> REDIRECT_STATUSES = ImmutableSet.of(301, 302, 303, 307, 308);
+    private static final Set<Integer> PERMANENT_REDIRECT_STATUSES = ImmutableSet.of(301, 308);
+    private static final Set<String> UNCOPIED_REQUEST_HEADERS
+            = lowerCase(HttpHeaders.AUTHORIZATION, HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH);
+    private static final Set<String> UNCOPIED_RESPONSE_HEADERS
+            = lowerCase(HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LENGTH);
+    private static final String REDIRECT_COUNT = "jira.redirectCount";
+    private static final int MAX_REDIRECTS = 5;
+
+    private final String baseUrl;
+
+    RedirectFollowingFilter(String baseUrl) {
+        this.baseUrl = withoutTrailingSlash(baseUrl);
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+        int redirectCount = redirectCountOf(request);
+        if (!REDIRECT_STATUSES.contains(response.getStatus()) || response.getLocation() == null
+                || redirectCount >= MAX_REDIRECTS) {
+            return;
+        }
+        URI location = request.getUri().resolve(response.getLocation());
+        URI redirectedUri = PERMANENT_REDIRECT_STATUSES.contains(response.getStatus())
+                ? redirectedUriFor(request.getUri(), location) : location;
+        if (response.hasEntity()) {
+            response.getEntityStream().close();
+        }
+        Response redirected = repeat(request, redirectedUri, redirectCount + 1);
+
+        response.setStatus(redirected.getStatus());
+        response.getHeaders().clear();
+        for (Map.Entry<String, List<String>> header : redirected.getStringHeaders().entrySet()) {
+            if (!UNCOPIED_RESPONSE_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                response.getHeaders().put(header.getKey(), header.getValue());
+            }
+        }
+        response.setEntityStream(redirected.readEntity(InputStream.class));
+    }
+
+    /**
+     * The base URL is only remembered if the location keeps the requested path under a new base URL.
+     */
+    private URI redirectedUriFor(URI requestUri, URI location) {
+        String requestedBase = withoutTrailingSlash(BaseUrlRedirects.resolvedBaseUrlFor(baseUrl).or(baseUrl));
+        String requestedResource = withoutQuery(requestUri);
+        if (!requestedResource.startsWith(requestedBase)) {
+            return location;
+        }
+        String relativePath = requestedResource.substring(requestedBase.length());
+        String redirectedResource = withoutTrailingSlash(withoutQuery(location));
+        if (relativePath.length() > 1 && redirectedResource.endsWith(relativePath)) {
+            BaseUrlRedirects.remember(baseUrl,
+                                      redirectedResource.substring(0, redirectedResource.length() - relativePath.length()));
+            return (location.getRawQuery() == null) ? withQuery(redirectedResource, requestUri) : location;
+        }
+        return location;
+    }
+
+    private Response repeat(ClientRequestContext request, URI redirectedUri, int redirectCount) {
+        Invocation.Builder builder = request.getClient().target(redirectedUri).request()
+                                            .property(REDIRECT_COUNT, redirectCount);
+        for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+            if (!UNCOPIED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        if (request.hasEntity()) {
+            return builder.method(request.getMethod(), Entity.entity(request.getEntity(), request.getMediaType()));
+        }
+        return builder.method(request.getMethod());
+    }
+
+    private int redirectCountOf(ClientRequestContext request) {
+        Optional<Object> redirectCount = Optional.fromNullable(request.getProperty(REDIRECT_COUNT));
+        return redirectCount.isPresent() ? (Integer) redirectCount.get() : 0;
+    }
+
+    private static Set<String> lowerCase(String... headers) {
+        ImmutableSet.Builder<String> lowerCaseHeaders = ImmutableSet.builder();
+        for (String header : headers) {
+            lowerCaseHeaders.add(header.toLowerCase(Locale.ENGLISH));
+        }
+        return lowerCaseHeaders.build();
+    }
+
+    private URI withQuery(String resource, URI requestUri) {
+        return URI.create((requestUri.getRawQuery() == null) ? resource : resource + "?" + requestUri.getRawQuery());
+    }
+
+    private static String withoutQuery(URI uri) {
+        String value = uri.toString();
+        int queryStart = value.indexOf('?');
+        return (queryStart < 0) ? value : value.substring(0, queryStart);
+    }
+
+    private static String withoutTrailingSlash(String value) {
+        return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+    }
+}
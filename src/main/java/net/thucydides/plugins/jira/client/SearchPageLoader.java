@@ -0,0 +1,28 @@
+package net.thucydides.plugins.jira.client;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads and decodes a single page of JQL search results.
+ */
+class SearchPageLoader implements Callable<SearchResultPage> {
+    private final JerseyJiraClient jiraClient;
+    private final String query;
+    private final FieldProjection projection;
+    private final int startAt;
+    private final int maxResults;
+
+    SearchPageLoader(JerseyJiraClient jiraClient, String query, FieldProjection projection, int startAt,
+                     int maxResults) {
+        this.jiraClient = jiraClient;
+        this.query = query;
+        this.projection = projection;
+        this.startAt = startAt;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public SearchResultPage call() throws Exception {
+        return jiraClient.loadPage(query, projection, startAt, maxResults);
+    }
+}
@@ -0,0 +1,43 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.collect.ImmutableList;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+
+/**
+ * One page of JQL search results, together with the total number of matching issues reported by the server.
+ */
+class SearchResultPage {
+    private final int startAt;
+    private final int maxResults;
+    private final int total;
+    private final List<IssueSummary> issues;
+
+    SearchResultPage(int startAt, int maxResults, int total, List<IssueSummary> issues) {
+        this.startAt = startAt;
+        this.maxResults = maxResults;
+        this.total = total;
+        this.issues = ImmutableList.copyOf(issues);
+    }
+
+    static SearchResultPage empty(int startAt) {
+        return new SearchResultPage(startAt, 0, 0, ImmutableList.<IssueSummary>of());
+    }
+
+    public int getStartAt() {
+        return startAt;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<IssueSummary> getIssues() {
+        return issues;
+    }
+}
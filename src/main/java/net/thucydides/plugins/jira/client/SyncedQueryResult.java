@@ -0,0 +1,39 @@
+package net.thucydides.plugins.jira.client;
+
+import com.google.common.collect.ImmutableList;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+
+import java.util.List;
+
+/**
+ * The cached results of a JQL query, and the time at which they were last brought up to date with the server.
+ */
+class SyncedQueryResult {
+    private final List<IssueSummary> issues;
+    private final long syncedAt;
+
+    SyncedQueryResult(List<IssueSummary> issues, long syncedAt) {
+        this(issues, syncedAt, true);
+    }
+
+    private SyncedQueryResult(List<IssueSummary> issues, long syncedAt, boolean copyIssues) {
+        this.issues = copyIssues ? ImmutableList.copyOf(issues) : issues;
+        this.syncedAt = syncedAt;
+    }
+
+    /**
+     * Results held in a read-only view, such as the issues of an {@link OffHeapIssueStore},
+     * which would be defeated by copying them.
+     */
+    static SyncedQueryResult ofReadOnlyView(List<IssueSummary> issues, long syncedAt) {
+        return new SyncedQueryResult(issues, syncedAt, false);
+    }
+
+    public List<IssueSummary> getIssues() {
+        return issues;
+    }
+
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+}
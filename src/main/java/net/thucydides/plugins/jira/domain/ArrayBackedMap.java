@@ -0,0 +1,77 @@
+package net.thucydides.plugins.jira.domain;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map view over a list of names and an array of values.
+ * Issues hold only a handful of fields each, so a linear search costs no more than hashing.
+ */
+class ArrayBackedMap<V> extends AbstractMap<String, V> {
+
+    private final List<String> names;
+    private final V[] values;
+
+    ArrayBackedMap(List<String> names, V[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return names.size();
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return names.indexOf(name) >= 0;
+    }
+
+    @Override
+    public V get(Object name) {
+        int index = names.indexOf(name);
+        return (index < 0) ? null : values[index];
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < names.size();
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, V> entry = new SimpleImmutableEntry<String, V>(names.get(index), values[index]);
+                        index++;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.size();
+            }
+        };
+    }
+}
@@ -2,27 +2,40 @@ package net.thucydides.plugins.jira.domain;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Issues are held in a compact form, as large result sets may be cached for the length of a build.
+ * Strings that repeat from one issue to the next (types, labels, versions and field names) are shared
+ * through {@link Symbols}, and custom and rendered fields are stored as arrays against a shared list of names
+ * rather than as a map per issue.
+ */
 public class IssueSummary {
 
-    private final URI self;
-    private final Long id;
+    private static final long NOT_SET = Long.MIN_VALUE;
+
+    private final String self;
+    private final long id;
     private final String key;
     private final String summary;
     private final String description;
     private final String type;
     private final List<String> labels;
     private final List<String> fixVersions;
-    private final Map<String, Object> customFieldValues;
-    private final Map<String, String> renderedFieldValues;
+    private final List<String> customFieldNames;
+    private final Object[] customFieldValues;
+    private final List<String> renderedFieldNames;
+    private final String[] renderedFieldValues;
+    private final long updated;
+    private final String parentKey;
 
     public IssueSummary(URI self, Long id, String key, String summary, String description, Map<String, String> renderedFieldValues, String type) {
         this(self, id, key, summary, description, renderedFieldValues, type,
@@ -31,24 +44,47 @@ public class IssueSummary {
 
     public IssueSummary(URI self, Long id, String key, String summary, String description, Map<String, String> renderedFieldValues,
                         String type, List<String> labels, List<String> fixVersions, Map<String, Object> customFields) {
-        this.self = self;
-        this.id = id;
+        this(self, id, key, summary, description, renderedFieldValues, type, labels, fixVersions, customFields, null);
+    }
+
+    public IssueSummary(URI self, Long id, String key, String summary, String description, Map<String, String> renderedFieldValues,
+                        String type, List<String> labels, List<String> fixVersions, Map<String, Object> customFields,
+                        Date updated) {
+        this(self, id, key, summary, description, renderedFieldValues, type, labels, fixVersions, customFields,
+             updated, null);
+    }
+
+    public IssueSummary(URI self, Long id, String key, String summary, String description, Map<String, String> renderedFieldValues,
+                        String type, List<String> labels, List<String> fixVersions, Map<String, Object> customFields,
+                        Date updated, String parentKey) {
+        this.self = (self == null) ? null : self.toString();
+        this.id = (id == null) ? NOT_SET : id;
         this.key = key;
         this.summary = summary;
         this.description = description;
-        this.renderedFieldValues = renderedFieldValues;
-        this.type = type;
-        this.labels = ImmutableList.copyOf(labels);
-        this.fixVersions = ImmutableList.copyOf(fixVersions);
-        this.customFieldValues = ImmutableMap.copyOf(customFields);
+        this.type = Symbols.symbol(type);
+        this.labels = Symbols.symbols(labels);
+        this.fixVersions = Symbols.symbols(fixVersions);
+        this.customFieldNames = Symbols.symbols(ImmutableList.copyOf(customFields.keySet()));
+        this.customFieldValues = new Object[customFieldNames.size()];
+        for (int i = 0; i < customFieldNames.size(); i++) {
+            this.customFieldValues[i] = Symbols.valueSymbol(checkNotNull(customFields.get(customFieldNames.get(i))));
+        }
+        this.renderedFieldNames = Symbols.symbols(ImmutableList.copyOf(renderedFieldValues.keySet()));
+        this.renderedFieldValues = new String[renderedFieldNames.size()];
+        for (int i = 0; i < renderedFieldNames.size(); i++) {
+            this.renderedFieldValues[i] = renderedFieldValues.get(renderedFieldNames.get(i));
+        }
+        this.updated = (updated == null) ? NOT_SET : updated.getTime();
+        this.parentKey = parentKey;
     }
 
     public URI getSelf() {
-        return self;
+        return (self == null) ? null : URI.create(self);
     }
 
     public Long getId() {
-        return id;
+        return (id == NOT_SET) ? null : id;
     }
 
     public String getKey() {
@@ -75,6 +111,20 @@ public class IssueSummary {
         return fixVersions;
     }
 
+    /**
+     * When the issue was last updated in JIRA, if the field was loaded.
+     */
+    public Optional<Date> getUpdated() {
+        return (updated == NOT_SET) ? Optional.<Date>absent() : Optional.of(new Date(updated));
+    }
+
+    /**
+     * The key of the parent issue of a sub-task, if the "parent" field was loaded.
+     */
+    public Optional<String> getParentKey() {
+        return Optional.fromNullable(parentKey);
+    }
+
     @Override
     public String toString() {
         return "IssueSummary{" +
@@ -84,15 +134,24 @@ public class IssueSummary {
     }
 
     public Optional<CustomFieldCast> customField(String fieldName) {
-        if (customFieldValues.get(fieldName) == null) {
+        int index = customFieldNames.indexOf(fieldName);
+        if (index < 0) {
             return Optional.absent();
         } else {
-            return Optional.of(new CustomFieldCast(customFieldValues.get(fieldName)));
+            return Optional.of(new CustomFieldCast(customFieldValues[index]));
         }
     }
 
     public RenderedView getRendered() {
-        return new RenderedView(renderedFieldValues);
+        return new RenderedView(getRenderedFieldValues());
+    }
+
+    Map<String, Object> getCustomFieldValues() {
+        return new ArrayBackedMap<Object>(customFieldNames, customFieldValues);
+    }
+
+    Map<String, String> getRenderedFieldValues() {
+        return new ArrayBackedMap<String>(renderedFieldNames, renderedFieldValues);
     }
 
 }
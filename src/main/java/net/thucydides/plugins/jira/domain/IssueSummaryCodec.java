@@ -0,0 +1,169 @@
+package net.thucydides.plugins.jira.domain;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes issue summaries in a compact binary form, for storage outside of the JVM heap.
+ * Issues written in an earlier version of the format can still be read.
+ */
+public final class IssueSummaryCodec {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int FORMAT_VERSION_WITHOUT_PARENT_KEY = 1;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte LIST_VALUE = 2;
+
+    private IssueSummaryCodec() {}
+
+    public static byte[] encode(IssueSummary issue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(issue, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static IssueSummary decode(byte[] encodedIssue) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(encodedIssue)));
+    }
+
+    public static void write(IssueSummary issue, DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, issue.getKey());
+        out.writeLong(issue.getId() == null ? -1 : issue.getId());
+        writeString(out, issue.getSelf() == null ? null : issue.getSelf().toString());
+        writeString(out, issue.getSummary());
+        writeString(out, issue.getDescription());
+        writeString(out, issue.getType());
+        writeList(out, issue.getLabels());
+        writeList(out, issue.getFixVersions());
+        out.writeLong(issue.getUpdated().isPresent() ? issue.getUpdated().get().getTime() : -1);
+        writeString(out, issue.getParentKey().orNull());
+
+        Map<String, String> renderedFieldValues = issue.getRenderedFieldValues();
+        out.writeInt(renderedFieldValues.size());
+        for (Map.Entry<String, String> renderedField : renderedFieldValues.entrySet()) {
+            writeString(out, renderedField.getKey());
+            writeString(out, renderedField.getValue());
+        }
+
+        Map<String, Object> customFieldValues = issue.getCustomFieldValues();
+        out.writeInt(customFieldValues.size());
+        for (Map.Entry<String, Object> customField : customFieldValues.entrySet()) {
+            writeString(out, customField.getKey());
+            writeValue(out, customField.getValue());
+        }
+    }
+
+    public static IssueSummary read(DataInput in) throws IOException {
+        int version = in.readByte();
+        if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_PARENT_KEY) {
+            throw new IOException("Unsupported issue format version " + version);
+        }
+        String key = readString(in);
+        long id = in.readLong();
+        String self = readString(in);
+        String summary = readString(in);
+        String description = readString(in);
+        String type = readString(in);
+        List<String> labels = readList(in);
+        List<String> fixVersions = readList(in);
+        long updated = in.readLong();
+        String parentKey = (version == FORMAT_VERSION) ? readString(in) : null;
+
+        int renderedFieldCount = in.readInt();
+        Map<String, String> renderedFieldValues = Maps.newHashMap();
+        for (int i = 0; i < renderedFieldCount; i++) {
+            renderedFieldValues.put(readString(in), readString(in));
+        }
+
+        int customFieldCount = in.readInt();
+        Map<String, Object> customFieldValues = Maps.newHashMap();
+        for (int i = 0; i < customFieldCount; i++) {
+            customFieldValues.put(readString(in), readValue(in));
+        }
+
+        return new IssueSummary(self == null ? null : URI.create(self),
+                                id == -1 ? null : id,
+                                key, summary, description, renderedFieldValues, type,
+                                labels, fixVersions, customFieldValues,
+                                updated == -1 ? null : new Date(updated), parentKey);
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof List) {
+            out.writeByte(LIST_VALUE);
+            List<String> values = Lists.newArrayList();
+            for (Object entry : (List<?>) value) {
+                values.add(entry == null ? null : entry.toString());
+            }
+            writeList(out, values);
+        } else {
+            out.writeByte(STRING_VALUE);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte valueType = in.readByte();
+        switch (valueType) {
+            case NULL_VALUE: return null;
+            case LIST_VALUE: return readList(in);
+            default: return readString(in);
+        }
+    }
+
+    private static void writeList(DataOutput out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readList(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> values = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+package net.thucydides.plugins.jira.domain;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.List;
+
+/**
+ * Shared instances of the strings that are repeated from one issue to the next, such as issue types, labels,
+ * version names and field names, and of the lists made from them.
+ * The tables hold their entries weakly, so symbols no longer used by any issue can be collected.
+ */
+final class Symbols {
+
+    /**
+     * Longer custom field values are usually free text rather than one of a few options, and are not shared.
+     */
+    static final int MAXIMUM_SHARED_VALUE_LENGTH = 64;
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Interner<ImmutableList<String>> LISTS = Interners.newWeakInterner();
+
+    private Symbols() {
+    }
+
+    static String symbol(String value) {
+        return (value == null) ? null : STRINGS.intern(value);
+    }
+
+    static ImmutableList<String> symbols(List<String> values) {
+        if (values.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<String> symbols = ImmutableList.builder();
+        for (String value : values) {
+            symbols.add(symbol(value));
+        }
+        return LISTS.intern(symbols.build());
+    }
+
+    static Object valueSymbol(Object value) {
+        if (value instanceof String && ((String) value).length() <= MAXIMUM_SHARED_VALUE_LENGTH) {
+            return symbol((String) value);
+        }
+        if (value instanceof List) {
+            return symbols((List<String>) value);
+        }
+        return value;
+    }
+}
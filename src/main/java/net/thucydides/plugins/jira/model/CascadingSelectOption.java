@@ -1,6 +1,5 @@
 package net.thucydides.plugins.jira.model;
 
-import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
@@ -20,7 +19,7 @@ public class CascadingSelectOption {
     public CascadingSelectOption(String option, CascadingSelectOption parentOption, List<CascadingSelectOption> nestedOptions) {
         this.option = option;
         this.parentOption = Optional.fromNullable(parentOption);
-        this.nestedOptions = nestedOptions;
+        this.nestedOptions = ImmutableList.copyOf(nestedOptions);
     }
 
     public String getOption() {
@@ -31,8 +30,11 @@ public class CascadingSelectOption {
         return parentOption;
     }
 
+    /**
+     * The nested options are held in an immutable list, so they are returned as they are rather than copied.
+     */
     public List<CascadingSelectOption> getNestedOptions() {
-        return ImmutableList.copyOf(nestedOptions);
+        return nestedOptions;
     }
 
     public void addChildren(List<CascadingSelectOption> nestedOptions) {
@@ -0,0 +1,59 @@
+package net.thucydides.plugins.jira.model;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The option tree of a cascading select field, indexed by the full path of each option,
+ * so that any option can be found without walking the tree.
+ */
+public class CascadingSelectOptions {
+
+    private final List<CascadingSelectOption> options;
+    private final Map<List<String>, CascadingSelectOption> optionsByPath;
+
+    public CascadingSelectOptions(List<CascadingSelectOption> options) {
+        this.options = ImmutableList.copyOf(options);
+        Map<List<String>, CascadingSelectOption> optionsByPath = Maps.newHashMap();
+        index(this.options, ImmutableList.<String>of(), optionsByPath);
+        this.optionsByPath = ImmutableMap.copyOf(optionsByPath);
+    }
+
+    private void index(List<CascadingSelectOption> options, List<String> parentPath,
+                       Map<List<String>, CascadingSelectOption> optionsByPath) {
+        for (CascadingSelectOption option : options) {
+            List<String> path = ImmutableList.<String>builder().addAll(parentPath).add(option.getOption()).build();
+            if (!optionsByPath.containsKey(path)) {
+                optionsByPath.put(path, option);
+            }
+            index(option.getNestedOptions(), path, optionsByPath);
+        }
+    }
+
+    /**
+     * The top-level options, in the order defined in JIRA.
+     */
+    public List<CascadingSelectOption> getOptions() {
+        return options;
+    }
+
+    /**
+     * Find an option by its path, e.g. findOption("Grow Apples", "Grow red apples").
+     */
+    public Optional<CascadingSelectOption> findOption(String... path) {
+        return findOption(ImmutableList.copyOf(path));
+    }
+
+    public Optional<CascadingSelectOption> findOption(List<String> path) {
+        return Optional.fromNullable(optionsByPath.get(path));
+    }
+
+    public int size() {
+        return optionsByPath.size();
+    }
+}
@@ -0,0 +1,117 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.base.Optional
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import net.thucydides.plugins.jira.domain.IssueSummary
+import org.json.JSONException
+
+import java.util.concurrent.Executors
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Issues, a JIRA client that needs no JIRA server, and a stub JIRA server, shared by the client specs.
+ */
+class JiraFixtures {
+
+    /**
+     * A story with the given key. Other fields can be given by name, for example
+     * <code>issue("DEMO-1", labels: ["urgent"], updated: 1000)</code>.
+     */
+    static IssueSummary issue(Map fields = [:], String key) {
+        long id = fields.containsKey("id") ? fields.id as long : (key - ~/^[A-Za-z]+-/) as long
+        new IssueSummary(new URI("http://jira/rest/api/2/issue/" + id), id, key,
+                         fields.containsKey("summary") ? fields.summary : "summary of " + key,
+                         fields.containsKey("description") ? fields.description : "description",
+                         fields.rendered ?: [:], fields.containsKey("type") ? fields.type : "Story",
+                         fields.labels ?: [], fields.fixVersions ?: [], fields.customFields ?: [:],
+                         dateOf(fields.updated), fields.parentKey)
+    }
+
+    private static Date dateOf(Object updated) {
+        (updated == null || updated instanceof Date) ? updated : new Date(updated as long)
+    }
+
+    /**
+     * Answers lookups by key and JQL searches with the issues it was given, recording the keys and queries it loads.
+     * Every search matches all of the issues, which are returned two to a page.
+     */
+    static class StubJiraClient extends JerseyJiraClient {
+        final Map<String, IssueSummary> issues = Collections.synchronizedMap([:])
+        final List<String> loadedKeys = [].asSynchronized()
+        final List<String> searches = [].asSynchronized()
+
+        StubJiraClient(List<IssueSummary> issues = [], JiraCacheSettings cacheSettings = JiraCacheSettings.defaults(),
+                       JiraConnectionSettings connectionSettings = JiraConnectionSettings.defaults()) {
+            super("http://localhost:1", "user", "password", 2, "DEMO", "Story", [], connectionSettings, cacheSettings)
+            issues.each { this.issues[it.key] = it }
+        }
+
+        @Override
+        Optional<IssueSummary> loadByKey(String key, FieldProjection projection) throws JSONException {
+            loadedKeys << key
+            Optional.fromNullable(issues[key])
+        }
+
+        @Override
+        protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt, int maxResults)
+                throws JSONException {
+            searches << query
+            def matchingIssues = issues.values() as List
+            def page = matchingIssues.subList(Math.min(startAt, matchingIssues.size()),
+                                              Math.min(startAt + maxResults, matchingIssues.size()))
+            new SearchResultPage(startAt, maxResults, matchingIssues.size(), page)
+        }
+    }
+
+    /**
+     * A JIRA server on a free local port that passes every request to a handler, which answers it with
+     * {@link #respond}. Requests are handled concurrently, so a handler may hold one back while others are answered.
+     */
+    static class StubJiraServer {
+        private final HttpServer server
+
+        StubJiraServer(Closure handler) {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+            server.executor = Executors.newCachedThreadPool()
+            server.createContext("/", handler as HttpHandler)
+            server.start()
+        }
+
+        String getUrl() {
+            "http://localhost:" + server.address.port
+        }
+
+        void stop() {
+            server.stop(0)
+            server.executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Answer a request to the stub server with a JSON body, compressed if the client accepts it.
+     * A null body sends no content at all, as for a not-modified response.
+     */
+    static void respond(HttpExchange exchange, int status, String body, Map<String, String> headers = [:]) {
+        exchange.responseHeaders.add("Content-Type", "application/json")
+        headers.each { name, value -> exchange.responseHeaders.add(name, value) }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1)
+            exchange.close()
+            return
+        }
+        byte[] bytes = body.getBytes("UTF-8")
+        if (exchange.requestHeaders.getFirst("Accept-Encoding")?.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream()
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed)
+            gzip.write(bytes)
+            gzip.close()
+            bytes = compressed.toByteArray()
+            exchange.responseHeaders.add("Content-Encoding", "gzip")
+        }
+        exchange.sendResponseHeaders(status, bytes.length)
+        exchange.responseBody.write(bytes)
+        exchange.close()
+    }
+}
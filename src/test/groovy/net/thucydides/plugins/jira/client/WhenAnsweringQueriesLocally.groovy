@@ -0,0 +1,66 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenAnsweringQueriesLocally extends Specification {
+
+    def issuesByKey = [issue("DEMO-1", labels: ["urgent"], fixVersions: ["1.0"],
+                             customFields: ["Requirements": ["Grow Potatoes"]], updated: 1000),
+                       issue("DEMO-2", type: "Bug", labels: ["urgent", "ui"], fixVersions: ["1.1"],
+                             customFields: ["Requirements": ["Grow Potatoes"]], updated: 1000),
+                       issue("DEMO-3", labels: ["sort order by rank"], fixVersions: ["1.0", "1.1"],
+                             customFields: ["Requirements": ["Grow Carrots"]], updated: 1000)]
+
+    def cachedQueries = [
+            (new ProjectedLookup("project = DEMO ORDER BY key", FieldProjection.ALL)):
+                    new SyncedQueryResult(issuesByKey, 1000),
+            (new ProjectedLookup("project = DEMO", FieldProjection.ALL)):
+                    new SyncedQueryResult(issuesByKey.reverse(), 1000)
+    ]
+
+    def engine = new LocalQueryEngine(["Requirements"])
+
+    def "should answer narrower queries from the cached results of a broader query"() {
+        expect:
+            engine.answer(query, FieldProjection.ALL, cachedQueries).get()*.key == keys
+        where:
+            query                                                         | keys
+            "project = DEMO AND labels = urgent ORDER BY key"             | ["DEMO-1", "DEMO-2"]
+            "project = DEMO AND labels = urgent"                          | ["DEMO-2", "DEMO-1"]
+            "project = DEMO AND fixVersion = '1.0' AND issuetype = Story" | ["DEMO-3", "DEMO-1"]
+            "project = demo and type in (Bug) order by key"               | ["DEMO-2"]
+            "project = DEMO AND key in (DEMO-3, DEMO-9)"                  | ["DEMO-3"]
+            "project = DEMO AND \"Requirements\" = \"grow carrots\""      | ["DEMO-3"]
+            "project = DEMO AND labels = \"sort order by rank\""           | ["DEMO-3"]
+    }
+
+    def "should only answer from cached results sorted in the same order"() {
+        given:
+            def orderedQuery = cachedQueries.findAll { it.key.query.contains("ORDER BY") }
+            def unorderedQuery = cachedQueries.findAll { !it.key.query.contains("ORDER BY") }
+        expect:
+            !engine.answer("project = DEMO AND labels = urgent", FieldProjection.ALL, orderedQuery).isPresent()
+            !engine.answer("project = DEMO AND labels = urgent ORDER BY key", FieldProjection.ALL, unorderedQuery)
+                   .isPresent()
+    }
+
+    def "should leave queries that are not covered by a cached query to the server"() {
+        expect:
+            !engine.answer(query, FieldProjection.ALL, cachedQueries).isPresent()
+        where:
+            query << ["labels = urgent",
+                      "project = DEMO AND labels = urgent OR labels = ui",
+                      "project = DEMO AND labels != urgent",
+                      "project = DEMO AND fixVersion = 10001",
+                      "project = DEMO ORDER BY updated",
+                      "project = DEMO AND summary ~ potatoes"]
+    }
+
+    def "should only use cached results loaded with the same projection"() {
+        expect:
+            !engine.answer("project = DEMO AND labels = urgent", FieldProjection.KEYS_AND_SUMMARIES, cachedQueries)
+                   .isPresent()
+    }
+}
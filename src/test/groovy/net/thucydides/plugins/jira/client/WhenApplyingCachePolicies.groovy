@@ -0,0 +1,174 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.base.Optional
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import net.thucydides.plugins.jira.domain.IssueSummary
+import org.json.JSONException
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenApplyingCachePolicies extends Specification {
+
+    static class VersionedJiraClient extends StubJiraClient {
+        final AtomicInteger loads = new AtomicInteger()
+        volatile String summary = "Version 1"
+        volatile CountDownLatch reloadReleased = new CountDownLatch(0)
+
+        VersionedJiraClient(JiraCacheSettings cacheSettings) {
+            super([], cacheSettings)
+        }
+
+        @Override
+        Optional<IssueSummary> loadByKey(String key, FieldProjection projection) throws JSONException {
+            if (loads.getAndIncrement() > 0) {
+                reloadReleased.await()
+            }
+            Optional.of(issue(key, summary: summary))
+        }
+    }
+
+    static class CreateMetadataCountingJiraClient extends StubJiraClient {
+        final AtomicInteger createMetadataLoads = new AtomicInteger()
+
+        CreateMetadataCountingJiraClient(JiraCacheSettings cacheSettings) {
+            super([], cacheSettings)
+        }
+
+        @Override
+        CreateMetadata loadCreateMetadata(String project) {
+            createMetadataLoads.incrementAndGet()
+            CreateMetadata.EMPTY
+        }
+    }
+
+    JerseyJiraClient client
+
+    def cleanup() {
+        client?.close()
+    }
+
+    def "should count hits and misses for issues looked up by key"() {
+        given:
+            client = new VersionedJiraClient(JiraCacheSettings.defaults())
+        when:
+            client.findByKey("DEMO-1")
+            client.findByKey("DEMO-1")
+            client.findByKey("DEMO-2")
+        then:
+            client.issueCacheStats.requestCount() == 3
+            client.issueCacheStats.hitCount() == 1
+            client.issueCacheStats.missCount() == 2
+            client.issueCacheStats.loadSuccessCount() == 2
+            client.queryCacheStats.requestCount() == 0
+    }
+
+    def "should count the issues evicted when the cache is full"() {
+        given:
+            client = new VersionedJiraClient(JiraCacheSettings.defaults()
+                                                     .withIssueCache(CachePolicy.defaults().withMaximumSize(1)))
+        when:
+            client.findByKey("DEMO-1")
+            client.findByKey("DEMO-2")
+            client.findByKey("DEMO-1")
+        then:
+            client.issueCacheStats.evictionCount() == 2
+            client.issueCacheStats.missCount() == 3
+            client.loads.get() == 3
+    }
+
+    def "should load an issue again once it has expired"() {
+        given:
+            client = new VersionedJiraClient(JiraCacheSettings.defaults()
+                                                     .withIssueCache(CachePolicy.defaults().withExpireAfterWrite(50)))
+        when:
+            client.findByKey("DEMO-1")
+            client.summary = "Version 2"
+            Thread.sleep(100)
+        then:
+            client.findByKey("DEMO-1").get().summary == "Version 2"
+            client.loads.get() == 2
+    }
+
+    @Timeout(20)
+    def "should keep serving the old issue while it is refreshed in the background"() {
+        given:
+            client = new VersionedJiraClient(JiraCacheSettings.defaults()
+                                                     .withIssueCache(CachePolicy.defaults().withRefreshAfterWrite(50)))
+            client.reloadReleased = new CountDownLatch(1)
+        when:
+            client.findByKey("DEMO-1")
+            client.summary = "Version 2"
+            Thread.sleep(100)
+        then:
+            client.findByKey("DEMO-1").get().summary == "Version 1"
+        when:
+            client.reloadReleased.countDown()
+        then:
+            eventuallyReturns("Version 2")
+            client.issueCacheStats.missCount() == 1
+            client.issueCacheStats.loadSuccessCount() >= 2
+    }
+
+    def "should not refresh issues when no refresh interval is set"() {
+        given:
+            client = new VersionedJiraClient(JiraCacheSettings.defaults())
+        when:
+            client.findByKey("DEMO-1")
+            client.summary = "Version 2"
+            Thread.sleep(100)
+        then:
+            client.findByKey("DEMO-1").get().summary == "Version 1"
+            client.loads.get() == 1
+    }
+
+    def "should keep create metadata however long the field catalog lives"() {
+        given:
+            client = new CreateMetadataCountingJiraClient(JiraCacheSettings.defaults().withFieldCatalogTimeToLive(0))
+        when:
+            client.cascadingSelectOptionsFor("Product", "Story")
+            client.cascadingSelectOptionsFor("Product", "Bug")
+        then:
+            client.createMetadataLoads.get() == 1
+    }
+
+    def "should never expire create metadata cached without an expiry time"() {
+        given:
+            client = new CreateMetadataCountingJiraClient(JiraCacheSettings.defaults()
+                    .withCreateMetadataCache(CachePolicy.defaults().withExpireAfterWrite(0)))
+        when:
+            client.cascadingSelectOptionsFor("Product", "Story")
+            Thread.sleep(50)
+            client.cascadingSelectOptionsFor("Product", "Story")
+        then:
+            client.createMetadataLoads.get() == 1
+    }
+
+    def "should read create metadata again once it has expired"() {
+        given:
+            client = new CreateMetadataCountingJiraClient(JiraCacheSettings.defaults()
+                    .withCreateMetadataCache(CachePolicy.defaults().withExpireAfterWrite(50)))
+        when:
+            client.cascadingSelectOptionsFor("Product", "Story")
+            Thread.sleep(100)
+            client.cascadingSelectOptionsFor("Product", "Story")
+        then:
+            client.createMetadataLoads.get() == 2
+    }
+
+    private boolean eventuallyReturns(String summary) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+        while (System.nanoTime() < deadline) {
+            if (client.findByKey("DEMO-1").get().summary == summary) {
+                return true
+            }
+            Thread.sleep(10)
+        }
+        false
+    }
+}
@@ -0,0 +1,103 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenCachingIssuesOnDisk extends Specification {
+
+    def cacheDirectory = Files.createTempDirectory("jira-issues").toFile()
+
+    def issueUpdatedAt(String key, long updated) {
+        issue(key, rendered: ["description": "<p>description</p>"], labels: ["label"], fixVersions: ["Version 1.0"],
+              customFields: ["Requirements": ["Grow Potatoes", "Grow normal potatoes"], "Capability": "Grow"],
+              updated: updated)
+    }
+
+    /**
+     * A revalidation that finds the given issues updated, and by default every cached issue still on the server.
+     */
+    def revalidation(Closure issuesUpdatedSince, Closure existingKeys = { Set<String> keys -> keys }) {
+        [issuesUpdatedSince: issuesUpdatedSince, existingKeys: existingKeys] as PersistentIssueCache.Revalidation
+    }
+
+    def "should read back cached issues with all of their fields"() {
+        given:
+            def cache = PersistentIssueCache.inDirectory(cacheDirectory)
+        when:
+            cache.put(issueUpdatedAt("DEMO-1", 1000))
+            def cachedIssue = PersistentIssueCache.inDirectory(cacheDirectory).get("DEMO-1").get()
+        then:
+            cachedIssue.key == "DEMO-1"
+            cachedIssue.rendered.description == "<p>description</p>"
+            cachedIssue.labels == ["label"]
+            cachedIssue.customField("Requirements").get().asListOf(String) == ["Grow Potatoes", "Grow normal potatoes"]
+            cachedIssue.customField("Capability").get().asString() == "Grow"
+            cachedIssue.updated.get() == new Date(1000)
+    }
+
+    def "should evict issues updated on the server since they were cached"() {
+        given:
+            def cache = PersistentIssueCache.inDirectory(cacheDirectory)
+            cache.put(issueUpdatedAt("DEMO-1", 1000))
+            cache.put(issueUpdatedAt("DEMO-2", 1000))
+        when:
+            cache.revalidateIfDue(0, revalidation { keys, since ->
+                [issueUpdatedAt("DEMO-1", 1000), issueUpdatedAt("DEMO-2", 2000)]
+            })
+        then:
+            cache.keys() == ["DEMO-1"] as Set
+    }
+
+    def "should evict issues the server no longer has under their key"() {
+        given:
+            def cache = PersistentIssueCache.inDirectory(cacheDirectory)
+            cache.put(issueUpdatedAt("DEMO-1", 1000))
+            cache.put(issueUpdatedAt("DEMO-2", 1000))
+            cache.put(issueUpdatedAt("DEMO-3", 1000))
+        when:
+            cache.revalidateIfDue(0, revalidation({ keys, since -> [] }, { keys -> ["DEMO-2"] as Set }))
+        then:
+            cache.keys() == ["DEMO-2"] as Set
+    }
+
+    def "should not revalidate again within the revalidation interval"() {
+        given:
+            def cache = PersistentIssueCache.inDirectory(cacheDirectory)
+            cache.put(issueUpdatedAt("DEMO-1", 1000))
+            def revalidations = 0
+            def countingRevalidation = revalidation { keys, since -> revalidations++; [] }
+        when:
+            cache.revalidateIfDue(60000, countingRevalidation)
+            cache.revalidateIfDue(60000, countingRevalidation)
+        then:
+            revalidations == 1
+    }
+
+    def "should not lock or read the cache directory while the last revalidation is recent"() {
+        given:
+            def cache = PersistentIssueCache.inDirectory(cacheDirectory)
+            cache.revalidateIfDue(60000, revalidation { keys, since -> [] })
+            new File(cacheDirectory, "cache.lock").delete()
+        when:
+            cache.revalidateIfDue(60000, revalidation { keys, since -> [] })
+        then:
+            !new File(cacheDirectory, "cache.lock").exists()
+    }
+
+    def "should keep the issues cached for each user apart"() {
+        given:
+            def cacheSettings = JiraCacheSettings.defaults().withPersistentCache(cacheDirectory)
+            def firstUserClient = new JerseyJiraClient("http://localhost:1", "user", "password", 100, "DEMO", "Story",
+                                                       [], JiraConnectionSettings.defaults(), cacheSettings)
+            def secondUserClient = new JerseyJiraClient("http://localhost:1", "other", "password", 100, "DEMO",
+                                                        "Story", [], JiraConnectionSettings.defaults(), cacheSettings)
+        expect:
+            firstUserClient.persistentIssueCache.get().directory != secondUserClient.persistentIssueCache.get().directory
+        cleanup:
+            firstUserClient.close()
+            secondUserClient.close()
+    }
+}
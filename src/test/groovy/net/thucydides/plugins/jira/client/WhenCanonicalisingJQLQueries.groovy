@@ -0,0 +1,63 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+class WhenCanonicalisingJQLQueries extends Specification {
+
+    def "queries that only differ in formatting should have the same canonical form"() {
+        expect:
+            JQLCanonicalForm.of(query) == "labels = x AND project = FOO"
+        where:
+            query << ["project=FOO and labels=x",
+                      "project = FOO AND labels = x",
+                      "  labels = \"x\"   AND project='FOO' ",
+                      "project = FOO\n\tAnd\tlabels = x"]
+    }
+
+    def "should normalise lists, functions and nested conditions"() {
+        expect:
+            JQLCanonicalForm.of("key in (\"DEMO-1\",'DEMO-2') and (type=Bug or type = \"Story\") " +
+                                "and assignee=currentUser( ) order  by key asc") ==
+                    "(type = Bug OR type = Story) AND assignee = currentUser() AND key IN (DEMO-1, DEMO-2) " +
+                    "ORDER BY key ASC"
+    }
+
+    def "should keep the quotes that values need"() {
+        expect:
+            JQLCanonicalForm.of(query) == canonical
+        where:
+            query                                      | canonical
+            "fixVersion = 'Version 1.0'"               | "fixVersion = \"Version 1.0\""
+            "labels = \"and\""                         | "labels = \"and\""
+            "updated >= \"-5m\""                       | "updated >= \"-5m\""
+            "\"Acceptance Criteria\" ~ \"potatoes\""   | "\"Acceptance Criteria\" ~ potatoes"
+    }
+
+    def "should keep the quotes around values made only of digits"() {
+        expect:
+            JQLCanonicalForm.of(query) == canonical
+        where:
+            query                                      | canonical
+            "fixVersion = \"10000\""                   | "fixVersion = \"10000\""
+            "fixVersion = '1.0'"                       | "fixVersion = \"1.0\""
+            "summary ~ \"2014\""                       | "summary ~ \"2014\""
+            "fixVersion = 10000"                       | "fixVersion = 10000"
+            "labels = \"release-2\""                   | "labels = release-2"
+    }
+
+    def "a quoted number and an unquoted one should not share a canonical form"() {
+        expect:
+            JQLCanonicalForm.of("fixVersion = \"10000\"") != JQLCanonicalForm.of("fixVersion = 10000")
+    }
+
+    def "should not reorder conditions joined by OR or the ORDER BY clause"() {
+        expect:
+            JQLCanonicalForm.of("type = Story OR type = Bug ORDER BY rank, key DESC") ==
+                    "type = Story OR type = Bug ORDER BY rank, key DESC"
+    }
+
+    def "should leave queries it cannot tokenize as they are"() {
+        expect:
+            JQLCanonicalForm.of(" summary ~ \"unterminated ") == "summary ~ \"unterminated"
+    }
+}
@@ -0,0 +1,102 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CountDownLatch
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenConnectingToJIRA extends Specification {
+
+    StubJiraServer server
+    List<Integer> clientPorts = [].asSynchronized()
+    List<String> acceptedEncodings = [].asSynchronized()
+    List<String> authorizations = [].asSynchronized()
+    CountDownLatch slowResponseReleased = new CountDownLatch(1)
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            clientPorts << exchange.remoteAddress.port
+            acceptedEncodings << exchange.requestHeaders.getFirst("Accept-Encoding")
+            authorizations << exchange.requestHeaders.getFirst("Authorization")
+            String path = exchange.requestURI.path
+            if (path == "/rest/api/2/field") {
+                respond(exchange, 200, '[]')
+                return
+            }
+            String key = path.substring(path.lastIndexOf("/") + 1)
+            if (key == "DEMO-99") {
+                slowResponseReleased.await()
+            }
+            respond(exchange, 200, '{"id":"1","key":"' + key + '","self":"http://localhost/rest/api/2/issue/1",' +
+                                   '"fields":{"summary":"Summary of ' + key + '"}}')
+        })
+    }
+
+    def cleanup() {
+        slowResponseReleased.countDown()
+        client?.close()
+        server.stop()
+    }
+
+    private JerseyJiraClient clientWith(JiraConnectionSettings settings) {
+        new JerseyJiraClient(server.url, "user", "password", 100, "DEMO", "Story", [],
+                             settings, JiraCacheSettings.defaults())
+    }
+
+    def "should send every request over the same kept-alive connection"() {
+        given:
+            client = clientWith(JiraConnectionSettings.defaults())
+            client.findByKey("DEMO-1")
+            clientPorts.clear()
+        when:
+            (2..6).each { client.findByKey("DEMO-" + it) }
+        then:
+            clientPorts.size() == 5
+            clientPorts.unique(false).size() == 1
+    }
+
+    def "should authenticate every request"() {
+        given:
+            client = clientWith(JiraConnectionSettings.defaults())
+        when:
+            (1..3).each { client.findByKey("DEMO-" + it) }
+        then:
+            authorizations.size() > 3
+            authorizations.every { it == "Basic " + "user:password".bytes.encodeBase64().toString() }
+    }
+
+    def "should ask for compressed responses and decompress them"() {
+        given:
+            client = clientWith(JiraConnectionSettings.defaults())
+        when:
+            def issue = client.findByKey("DEMO-1")
+        then:
+            acceptedEncodings.every { it.contains("gzip") }
+            issue.get().summary == "Summary of DEMO-1"
+    }
+
+    def "should not ask for compressed responses when compression is turned off"() {
+        given:
+            client = clientWith(JiraConnectionSettings.defaults().withCompression(false))
+        when:
+            def issue = client.findByKey("DEMO-1")
+        then:
+            acceptedEncodings.every { !it?.contains("gzip") }
+            issue.get().summary == "Summary of DEMO-1"
+    }
+
+    @Timeout(20)
+    def "should give up on a response that takes longer than the read timeout"() {
+        given:
+            client = clientWith(JiraConnectionSettings.defaults().withReadTimeout(200))
+        when:
+            client.findByKey("DEMO-99")
+        then:
+            thrown(Exception)
+    }
+}
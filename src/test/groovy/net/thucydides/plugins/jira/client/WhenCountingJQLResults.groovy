@@ -0,0 +1,95 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenCountingJQLResults extends Specification {
+
+    static final int TOTAL = 5
+
+    StubJiraServer server
+    List<Map<String, String>> searches = [].asSynchronized()
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            if (path.endsWith("/search")) {
+                Map<String, String> parameters = parametersOf(exchange.requestURI)
+                searches << parameters
+                if (parameters.jql.contains("BAD")) {
+                    respond(exchange, 400, '{"errorMessages":["The value BAD does not exist"]}')
+                    return
+                }
+                int startAt = (parameters.startAt ?: "0") as int
+                int maxResults = (parameters.maxResults ?: "50") as int
+                def issues = (1..TOTAL).findAll { it > startAt && it <= startAt + maxResults }.collect {
+                    '{"id":"' + it + '","key":"DEMO-' + it + '","fields":{"summary":"Summary of DEMO-' + it + '"}}'
+                }
+                respond(exchange, 200, '{"startAt":' + startAt + ',"maxResults":' + maxResults + ',"total":' + TOTAL +
+                                       ',"issues":[' + issues.join(",") + ']}')
+            } else {
+                respond(exchange, 200, '[]')
+            }
+        })
+    }
+
+    def cleanup() {
+        client.close()
+        server.stop()
+    }
+
+    private JerseyJiraClient clientWithPageSize(int pageSize) {
+        client = new JerseyJiraClient(server.url, "user", "password", pageSize, "DEMO")
+    }
+
+    private static Map<String, String> parametersOf(URI uri) {
+        (uri.rawQuery ?: "").split("&").findAll { it }.collectEntries {
+            def parameter = it.split("=", 2)
+            [(URLDecoder.decode(parameter[0], "UTF-8")): URLDecoder.decode(parameter[1], "UTF-8")]
+        }
+    }
+
+    def "should load a query that fits on one page with a single search"() {
+        given:
+            clientWithPageSize(50)
+        when:
+            def issues = client.findByJQL("project = DEMO")
+        then:
+            issues*.key == (1..TOTAL).collect { "DEMO-" + it }
+            searches.size() == 1
+            searches[0].startAt == "0"
+    }
+
+    def "should take the total from the first page rather than asking for a count"() {
+        given:
+            clientWithPageSize(2)
+        when:
+            def issues = client.findByJQL("project = DEMO")
+        then:
+            issues.size() == TOTAL
+            searches*.startAt.sort() == ["0", "2", "4"]
+            searches.every { it.maxResults != "0" }
+    }
+
+    def "should count the issues without downloading any of them"() {
+        given:
+            clientWithPageSize(50)
+        when:
+            def count = client.countByJQL("project = DEMO")
+        then:
+            count == TOTAL
+            searches.size() == 1
+            searches[0].maxResults == "0"
+    }
+
+    def "should count no issues for a query the server rejects"() {
+        given:
+            clientWithPageSize(50)
+        expect:
+            client.countByJQL("project = BAD") == 0
+    }
+}
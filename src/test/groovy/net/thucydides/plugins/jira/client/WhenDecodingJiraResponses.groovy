@@ -0,0 +1,148 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.model.CustomField
+import org.json.JSONException
+import spock.lang.Specification
+
+class WhenDecodingJiraResponses extends Specification {
+
+    def decoder = new JiraResponseDecoder(["Requirements", "Acceptance Criteria", "Estimate"],
+                                          ["Requirements"       : new CustomField("customfield_10001", "Requirements", "array"),
+                                           "Acceptance Criteria": new CustomField("customfield_10002", "Acceptance Criteria", "string"),
+                                           "Estimate"           : new CustomField("customfield_10003", "Estimate", "string")],
+                                          ["customfield_10002": "Acceptance Criteria"])
+
+    private static InputStream json(String text) {
+        new ByteArrayInputStream(text.getBytes("UTF-8"))
+    }
+
+    def "should read the fields of an issue"() {
+        when:
+            def issue = decoder.readIssue(json('''{"id":"10001","key":"DEMO-1","self":"http://jira/rest/api/2/issue/10001",
+                "fields":{"summary":"Grow potatoes","description":"Grow *big* potatoes","issuetype":{"id":"1","name":"Story"},
+                          "labels":["garden","food"],"fixVersions":[{"id":"2","name":"Version 1.0"}],
+                          "updated":"2014-01-02T10:00:00.000+0000"}}'''))
+        then:
+            issue.id == 10001
+            issue.key == "DEMO-1"
+            issue.self == new URI("http://jira/rest/api/2/issue/10001")
+            issue.summary == "Grow potatoes"
+            issue.description == "Grow *big* potatoes"
+            issue.type == "Story"
+            issue.labels == ["garden", "food"]
+            issue.fixVersions == ["Version 1.0"]
+            issue.updated.isPresent()
+    }
+
+    def "should leave out fields that are null"() {
+        when:
+            def issue = decoder.readIssue(json('''{"id":"10001","key":"DEMO-1","self":"http://jira/rest/api/2/issue/10001",
+                "fields":{"summary":"Grow potatoes","description":null,"issuetype":null,"updated":null,
+                          "customfield_10002":null}}'''))
+        then:
+            issue.description == null
+            issue.type == null
+            !issue.updated.isPresent()
+            !issue.customField("Acceptance Criteria").isPresent()
+    }
+
+    def "should skip fields and attributes it does not know"() {
+        when:
+            def issue = decoder.readIssue(json('''{"expand":"renderedFields","id":"10001","key":"DEMO-1",
+                "self":"http://jira/rest/api/2/issue/10001",
+                "fields":{"watches":{"watchCount":1,"watchers":[{"name":"bill"}]},"summary":"Grow potatoes",
+                          "customfield_19999":{"value":"Unregistered"},"issuetype":{"name":"Bug","subtask":false}},
+                "changelog":{"histories":[]}}'''))
+        then:
+            issue.key == "DEMO-1"
+            issue.summary == "Grow potatoes"
+            issue.type == "Bug"
+            issue.customFieldValues.isEmpty()
+    }
+
+    def "should read empty arrays as empty lists"() {
+        when:
+            def issue = decoder.readIssue(json('''{"id":"10001","key":"DEMO-1","self":"http://jira/rest/api/2/issue/10001",
+                "fields":{"labels":[],"fixVersions":[]}}'''))
+        then:
+            issue.labels.isEmpty()
+            issue.fixVersions.isEmpty()
+    }
+
+    def "should read nested custom field values by their registered names"() {
+        when:
+            def issue = decoder.readIssue(json('''{"id":"10001","key":"DEMO-1","self":"http://jira/rest/api/2/issue/10001",
+                "fields":{"customfield_10001":{"self":"http://jira/option/1","value":"Grow Potatoes",
+                                               "child":{"value":"Grow normal potatoes","child":{"value":"In a field"}}},
+                          "customfield_10002":{"value":"Grow big potatoes","id":"3"},
+                          "customfield_10003":8.5},
+                "renderedFields":{"description":"<p>Grow</p>","customfield_10002":"<p>Grow <b>big</b> potatoes</p>"}}'''))
+        then:
+            issue.customField("Requirements").get().value() == ["Grow Potatoes", "Grow normal potatoes", "In a field"]
+            issue.customField("Acceptance Criteria").get().asString() == "Grow big potatoes"
+            issue.customField("Estimate").get().asString() == "8.5"
+            issue.rendered.description == "<p>Grow</p>"
+            issue.rendered.customField("Acceptance Criteria").get() == "<p>Grow <b>big</b> potatoes</p>"
+    }
+
+    def "should read a page of search results"() {
+        when:
+            def page = decoder.readSearchPage(json('''{"expand":"schema,names","startAt":50,"maxResults":2,"total":3,
+                "issues":[{"id":"10001","key":"DEMO-1","fields":{"summary":"One"}},
+                          {"id":"10002","key":"DEMO-2","fields":{"summary":"Two"}}]}'''), 50, 100)
+        then:
+            page.startAt == 50
+            page.maxResults == 2
+            page.total == 3
+            page.issues*.key == ["DEMO-1", "DEMO-2"]
+    }
+
+    def "should read a search page with no issues"() {
+        when:
+            def page = decoder.readSearchPage(json('{"startAt":0,"total":0,"issues":[]}'), 0, 100)
+        then:
+            page.maxResults == 100
+            page.total == 0
+            page.issues.isEmpty()
+    }
+
+    def "should read the versions of a project"() {
+        when:
+            def versions = decoder.readVersions(json('''[
+                {"self":"http://jira/rest/api/2/version/1","id":"1","name":"Iteration 1.1","archived":false,
+                 "released":true,"releaseDate":"2014-01-01","projectId":10000},
+                {"self":"http://jira/rest/api/2/version/2","id":"2","name":"Version 1.0","archived":true,
+                 "released":false}]'''))
+        then:
+            versions*.name == ["Iteration 1.1", "Version 1.0"]
+            versions*.id == [1L, 2L]
+            versions*.released == [true, false]
+            versions*.archived == [false, true]
+            versions[0].self == new URI("http://jira/rest/api/2/version/1")
+    }
+
+    def "should read an empty list of versions"() {
+        expect:
+            decoder.readVersions(json('[]')).isEmpty()
+    }
+
+    def "should read the field catalog"() {
+        when:
+            def fields = decoder.readCustomFields(json('''[
+                {"id":"summary","name":"Summary","custom":false,"schema":{"type":"string","system":"summary"}},
+                {"id":"customfield_10001","name":"Requirements","custom":true,"clauseNames":["cf[10001]"],
+                 "schema":{"type":"array","items":"string","customId":10001}},
+                {"id":"customfield_10004","name":"Unscheduled","custom":true}]'''))
+        then:
+            fields*.id == ["summary", "customfield_10001", "customfield_10004"]
+            fields*.name == ["Summary", "Requirements", "Unscheduled"]
+            fields*.type == ["string", "array", "string"]
+    }
+
+    def "should reject a response that is not the expected JSON structure"() {
+        when:
+            decoder.readVersions(json('{"errorMessages":["Project does not exist"]}'))
+        then:
+            thrown(JSONException)
+    }
+}
@@ -0,0 +1,112 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenDerivingClients extends Specification {
+
+    List<JerseyJiraClient> clients = []
+
+    def cleanup() {
+        clients*.close()
+    }
+
+    private <T extends JerseyJiraClient> T opened(T client) {
+        clients << client
+        client
+    }
+
+    private StubJiraClient stubClient() {
+        opened(new StubJiraClient([issue("DEMO-1"), issue("DEMO-2")]))
+    }
+
+    def "should share the issue cache with clients for another issue type"() {
+        given:
+            def client = stubClient()
+            def storyClient = opened(client.usingMetadataIssueType("Story"))
+        when:
+            client.findByKey("DEMO-1")
+            storyClient.findByKey("DEMO-1")
+        then:
+            client.loadedKeys == ["DEMO-1"]
+        and:
+            storyClient.issueCacheStats.hitCount() == 1
+    }
+
+    def "should share issues loaded without custom fields with clients using other custom fields"() {
+        given:
+            def client = stubClient()
+            def requirementsClient = opened(client.usingCustomFields(["Requirements"]))
+        when:
+            client.findByKey("DEMO-1", FieldProjection.KEYS_AND_SUMMARIES)
+            requirementsClient.findByKey("DEMO-1", FieldProjection.KEYS_AND_SUMMARIES)
+        then:
+            client.loadedKeys == ["DEMO-1"]
+    }
+
+    def "should keep lookups that include custom fields apart for each field set"() {
+        expect:
+            new ProjectedLookup("DEMO-1", FieldProjection.ALL, ["Requirements"]) !=
+                    new ProjectedLookup("DEMO-1", FieldProjection.ALL, ["Acceptance Criteria"])
+            new ProjectedLookup("DEMO-1", FieldProjection.KEYS_AND_SUMMARIES, ["Requirements"]) ==
+                    new ProjectedLookup("DEMO-1", FieldProjection.KEYS_AND_SUMMARIES, ["Acceptance Criteria"])
+    }
+
+    def "should load issues for another field set through a client that decodes those fields"() {
+        given:
+            def client = stubClient()
+            def requirementsClient = opened(client.usingCustomFields(["Requirements"]))
+        expect:
+            client.clientFor(new ProjectedLookup("DEMO-1", FieldProjection.ALL, ["Requirements"])).is(requirementsClient)
+            requirementsClient.clientFor(new ProjectedLookup("DEMO-1", FieldProjection.ALL, [])).is(client)
+    }
+
+    def "should not load issues for a field set once every client using it is closed"() {
+        given:
+            def client = stubClient()
+            def requirementsClient = opened(client.usingCustomFields(["Requirements"]))
+            def requirementsLookup = new ProjectedLookup("DEMO-1", FieldProjection.ALL, ["Requirements"])
+        when:
+            requirementsClient.close()
+            client.clientFor(requirementsLookup)
+        then:
+            thrown(IllegalStateException)
+        when:
+            new FindByKeyLoader(client).load(requirementsLookup)
+        then:
+            thrown(IllegalStateException)
+            client.loadedKeys.isEmpty()
+    }
+
+    def "should not prefetch the project again or open another issue store for a new field set"() {
+        given:
+            def client = opened(new StubJiraClient([issue("DEMO-1")],
+                                                   JiraCacheSettings.defaults().withOffHeapIssueStore().withProjectPrefetch()))
+        when:
+            def requirementsClient = opened(client.usingCustomFields(["Requirements"]))
+            def storyClient = opened(client.usingMetadataIssueType("Story"))
+        then:
+            !requirementsClient.projectPrefetch.isPresent()
+            !requirementsClient.offHeapIssueStore.isPresent()
+        and:
+            storyClient.projectPrefetch.isPresent()
+            storyClient.offHeapIssueStore.isPresent()
+    }
+
+    def "should keep the shared connections open until every client is closed"() {
+        given:
+            def client = stubClient()
+            def storyClient = opened(client.usingMetadataIssueType("Story"))
+        when:
+            client.close()
+        then:
+            storyClient.findByKey("DEMO-2").get().key == "DEMO-2"
+            !storyClient.searchExecutor.isShutdown()
+        when:
+            storyClient.close()
+        then:
+            storyClient.searchExecutor.isShutdown()
+    }
+}
@@ -0,0 +1,106 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import org.json.JSONException
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenFetchingSearchPagesInParallel extends Specification {
+
+    static final List<String> KEYS = (1..20).collect { "DEMO-" + it }
+
+    static class SlowJiraClient extends StubJiraClient {
+        final List<Integer> requestedPages = [].asSynchronized()
+        final AtomicInteger inFlight = new AtomicInteger()
+        final AtomicInteger maxInFlight = new AtomicInteger()
+        volatile int failingPage = -1
+        volatile int shortPage = -1
+
+        SlowJiraClient(int searchParallelism) {
+            super(KEYS.collect { issue(it) }, JiraCacheSettings.defaults(),
+                  JiraConnectionSettings.defaults().withSearchParallelism(searchParallelism))
+        }
+
+        @Override
+        protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt, int maxResults)
+                throws JSONException {
+            requestedPages << startAt
+            if (startAt == 0) {
+                return super.loadPage(query, projection, startAt, maxResults)
+            }
+            int running = inFlight.incrementAndGet()
+            maxInFlight.set(Math.max(maxInFlight.get(), running))
+            try {
+                if (startAt == failingPage) {
+                    throw new JSONException("JIRA query failed: error 503")
+                }
+                Thread.sleep(100)
+                def page = super.loadPage(query, projection, startAt, maxResults)
+                if (startAt == shortPage) {
+                    shortPage = -1
+                    return new SearchResultPage(startAt, maxResults, page.total, page.issues.subList(0, 1))
+                }
+                page
+            } finally {
+                inFlight.decrementAndGet()
+            }
+        }
+    }
+
+    JerseyJiraClient client
+
+    def cleanup() {
+        client?.close()
+    }
+
+    @Timeout(20)
+    def "should load the remaining pages concurrently and keep the issues in order"() {
+        given:
+            client = new SlowJiraClient(4)
+        when:
+            def issues = client.loadByJQL("project = DEMO")
+        then:
+            issues*.key == KEYS
+            client.requestedPages.size() == 10
+            client.maxInFlight.get() > 1
+            client.maxInFlight.get() <= 4
+    }
+
+    @Timeout(20)
+    def "should load the rest of a page that came back short"() {
+        given:
+            client = new SlowJiraClient(4)
+            client.shortPage = 4
+        when:
+            def issues = client.loadByJQL("project = DEMO")
+        then:
+            issues*.key == KEYS
+            client.requestedPages.count(5) == 1
+    }
+
+    @Timeout(20)
+    def "should cancel the remaining pages when one of them fails"() {
+        given:
+            client = new SlowJiraClient(2)
+            client.failingPage = 4
+        when:
+            client.loadByJQL("project = DEMO")
+        then:
+            thrown(JSONException)
+            client.requestedPages.size() < 10
+    }
+
+    def "should load one page at a time when the parallelism is one"() {
+        given:
+            client = new SlowJiraClient(1)
+        when:
+            def issues = client.loadByJQL("project = DEMO")
+        then:
+            issues*.key == KEYS
+            client.maxInFlight.get() == 1
+    }
+}
@@ -0,0 +1,83 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenFollowingRedirects extends Specification {
+
+    StubJiraServer server
+    List<String> requestedPaths = [].asSynchronized()
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            requestedPaths << path
+            if (path.startsWith("/moved/")) {
+                respond(exchange, 301, '"moved"', ["Location": path.replace("/moved/", "/jira/")])
+            } else if (path.startsWith("/sso/")) {
+                respond(exchange, 302, '"log in first"', ["Location": "/login?return=" + path])
+            } else {
+                respond(exchange, 200, "[]")
+            }
+        })
+    }
+
+    def cleanup() {
+        server.stop()
+    }
+
+    private String serverUrl(String path) {
+        server.url + path
+    }
+
+    private JiraRestTransport transportFor(String url) {
+        new JiraRestTransport(url, "user", "password",
+                              JiraConnectionSettings.defaults().withMaxConnections(1).withMaxConnectionsPerHost(1))
+    }
+
+    private static int readStatus(JiraRestTransport transport) {
+        def response = transport.fieldTarget().request().get()
+        response.readEntity(String)
+        response.close()
+        response.status
+    }
+
+    /**
+     * The pool holds a single connection, so a redirect that did not release its connection would stall.
+     */
+    @Timeout(20)
+    def "should send later requests straight to a permanently moved base URL"() {
+        given:
+            def url = serverUrl("/moved")
+            def transport = transportFor(url)
+        when:
+            def statuses = (1..3).collect { readStatus(transport) }
+        then:
+            statuses == [200, 200, 200]
+            BaseUrlRedirects.resolvedBaseUrlFor(url).get() == serverUrl("/jira")
+            requestedPaths.count { it.startsWith("/moved/") } == 1
+        cleanup:
+            BaseUrlRedirects.forget(url)
+            transport.close()
+    }
+
+    @Timeout(20)
+    def "should follow a login redirect only for the request it answers"() {
+        given:
+            def url = serverUrl("/sso")
+            def transport = transportFor(url)
+        when:
+            def statuses = (1..3).collect { readStatus(transport) }
+        then:
+            statuses == [200, 200, 200]
+            !BaseUrlRedirects.resolvedBaseUrlFor(url).isPresent()
+            requestedPaths.count { it.startsWith("/sso/") } == 3
+            requestedPaths.count { it == "/login" } == 3
+        cleanup:
+            transport.close()
+    }
+}
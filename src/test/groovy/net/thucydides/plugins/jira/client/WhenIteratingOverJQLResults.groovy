@@ -0,0 +1,87 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import net.thucydides.plugins.jira.domain.IssueSummary
+import org.json.JSONException
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenIteratingOverJQLResults extends Specification {
+
+    static final List<String> KEYS = (1..20).collect { "DEMO-" + it }
+
+    static class PageCountingJiraClient extends StubJiraClient {
+        final List<Integer> requestedPages = [].asSynchronized()
+        volatile int failingPage = -1
+
+        PageCountingJiraClient() {
+            super(KEYS.collect { issue(it) })
+        }
+
+        @Override
+        protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt, int maxResults)
+                throws JSONException {
+            requestedPages << startAt
+            if (startAt == failingPage) {
+                throw new JSONException("JIRA query failed: error 503")
+            }
+            super.loadPage(query, projection, startAt, maxResults)
+        }
+    }
+
+    PageCountingJiraClient client = new PageCountingJiraClient()
+
+    def cleanup() {
+        client.close()
+    }
+
+    def "should request the result pages as the iteration advances"() {
+        when:
+            def issues = client.iterateByJQL("project = DEMO")
+            def firstIssue = issues.next()
+            Thread.sleep(200)
+        then:
+            firstIssue.key == "DEMO-1"
+            client.requestedPages == [0, 2]
+        when:
+            def remainingKeys = issues.collect { it.key }
+        then:
+            remainingKeys == KEYS.drop(1)
+            client.requestedPages == (0..<20).step(2)
+    }
+
+    def "should not read or fill the query cache"() {
+        when:
+            client.iterateByJQL("project = DEMO").size()
+        then:
+            client.queryCacheStats.requestCount() == 0
+        when:
+            client.findByJQL("project = DEMO")
+        then:
+            client.queryCacheStats.missCount() == 1
+    }
+
+    def "should pass every issue to a visitor in order"() {
+        given:
+            List<String> visitedKeys = []
+        when:
+            client.visitByJQL("project = DEMO", { IssueSummary issue -> visitedKeys << issue.key } as IssueVisitor)
+        then:
+            visitedKeys == KEYS
+    }
+
+    def "should report a page that could not be loaded once the iteration reaches it"() {
+        given:
+            client.failingPage = 4
+            def issues = client.iterateByJQL("project = DEMO")
+        when:
+            def firstKeys = (1..4).collect { issues.next().key }
+        then:
+            firstKeys == KEYS.take(4)
+        when:
+            issues.next()
+        then:
+            thrown(JIRAQueryError)
+    }
+}
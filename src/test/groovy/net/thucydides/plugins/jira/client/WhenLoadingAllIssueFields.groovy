@@ -0,0 +1,83 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenLoadingAllIssueFields extends Specification {
+
+    static final String ISSUE = '{"id":"10001","key":"DEMO-1","self":"http://localhost/rest/api/2/issue/10001",' +
+            '"fields":{"summary":"Grow potatoes","description":"Grow *big* potatoes","issuetype":{"name":"Story"},' +
+            '"labels":["garden"],"fixVersions":[{"name":"Version 1.0"}],"updated":"2014-01-02T10:00:00.000+0000",' +
+            '"customfield_10002":"Grow *big* potatoes"},' +
+            '"renderedFields":{"description":"<p>Grow <b>big</b> potatoes</p>",' +
+            '"customfield_10002":"<p>Grow <b>big</b> potatoes</p>"}}'
+
+    StubJiraServer server
+    List<String> requests = [].asSynchronized()
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            if (path == "/rest/api/2/field") {
+                respond(exchange, 200, '[{"id":"customfield_10002","name":"Acceptance Criteria"},' +
+                                       '{"id":"customfield_10003","name":"Unregistered"}]')
+            } else {
+                requests << exchange.requestURI.query
+                respond(exchange, 200, path.endsWith("/search") ? '{"startAt":0,"total":1,"issues":[' + ISSUE + ']}'
+                                                                : ISSUE)
+            }
+        })
+        client = new JerseyJiraClient(server.url, "user", "password", "DEMO",
+                                      ["Acceptance Criteria"])
+    }
+
+    def cleanup() {
+        client.close()
+        server.stop()
+    }
+
+    private static List<String> requestedFieldsIn(String query) {
+        (query =~ /fields=([^&]*)/)[0][1].split(",") as List
+    }
+
+    def "a full key lookup should request the standard and registered custom fields with their rendered views"() {
+        when:
+            def issue = client.findByKey("DEMO-1").get()
+        then:
+            requestedFieldsIn(requests[0]).sort() ==
+                    ["customfield_10002", "description", "fixVersions", "issuetype", "key", "labels", "summary",
+                     "updated"]
+            requests[0].contains("expand=renderedFields")
+        and:
+            issue.summary == "Grow potatoes"
+            issue.type == "Story"
+            issue.labels == ["garden"]
+            issue.fixVersions == ["Version 1.0"]
+            issue.updated.isPresent()
+            issue.customField("Acceptance Criteria").get().asString() == "Grow *big* potatoes"
+            issue.rendered.description == "<p>Grow <b>big</b> potatoes</p>"
+            issue.rendered.customField("Acceptance Criteria").get() == "<p>Grow <b>big</b> potatoes</p>"
+    }
+
+    def "fields that are not registered should not be requested"() {
+        when:
+            client.findByKey("DEMO-1")
+        then:
+            !requestedFieldsIn(requests[0]).contains("customfield_10003")
+            !requestedFieldsIn(requests[0]).contains("*all")
+    }
+
+    def "an issue found by a search should be the same as one looked up by key"() {
+        when:
+            def searched = client.findByJQL("project = DEMO")[0]
+            def lookedUp = client.findByKey("DEMO-1").get()
+        then:
+            requests.size() == 1
+            lookedUp.is(searched)
+            requestedFieldsIn(requests[0]).contains("customfield_10002")
+    }
+}
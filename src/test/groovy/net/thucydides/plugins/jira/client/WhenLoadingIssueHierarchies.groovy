@@ -0,0 +1,108 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.base.Optional
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import net.thucydides.plugins.jira.domain.IssueSummary
+import org.json.JSONException
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenLoadingIssueHierarchies extends Specification {
+
+    static class TreeJiraClient extends StubJiraClient {
+        TreeJiraClient(List<IssueSummary> issues) {
+            super(issues)
+        }
+
+        @Override
+        Map<String, Optional<IssueSummary>> findByKeys(Collection<String> keys, FieldProjection projection)
+                throws JSONException {
+            keys.collectEntries { [(it): Optional.fromNullable(issues[it])] }
+        }
+
+        @Override
+        ListenableFuture<List<IssueSummary>> findByJQLAsync(String query, FieldProjection projection) {
+            searches << query
+            def parentKeys = (query =~ /"([A-Z]+-\d+)"/).collect { it[1] }
+            Futures.immediateFuture(issues.values().findAll { child ->
+                (query.contains("Epic Link") && child.customField("Epic Link").isPresent() &&
+                        parentKeys.contains(child.customField("Epic Link").get().asString())) ||
+                (query.contains("parent") && parentKeys.contains(child.parentKey.orNull()))
+            } as List)
+        }
+    }
+
+    def tree = [issue("E-1"),
+                issue("S-1", customFields: ["Epic Link": "E-1"]), issue("S-2", customFields: ["Epic Link": "E-1"]),
+                issue("T-1", parentKey: "S-1"), issue("T-2", parentKey: "S-1"), issue("T-3", parentKey: "S-2")]
+
+    def "should load each level of the tree with a single search"() {
+        given:
+            def client = new TreeJiraClient(tree)
+        when:
+            def hierarchy = client.findHierarchy(["E-1"], ParentLink.anyOf(ParentLink.epicLink(), ParentLink.parent()), 5)
+        then:
+            hierarchy.roots*.key == ["E-1"]
+            hierarchy.getChildren("E-1")*.key == ["S-1", "S-2"]
+            hierarchy.getChildren("S-1")*.key == ["T-1", "T-2"]
+            hierarchy.getParent("T-3").get().key == "S-2"
+            hierarchy.depth == 2
+            !hierarchy.truncated
+            client.searches.size() == 3
+    }
+
+    def "should stop loading at the depth limit"() {
+        given:
+            def client = new TreeJiraClient(tree)
+        when:
+            def hierarchy = client.findHierarchy(["E-1"], ParentLink.anyOf(ParentLink.epicLink(), ParentLink.parent()), 1)
+        then:
+            hierarchy.issues*.key == ["E-1", "S-1", "S-2"]
+            hierarchy.truncated
+            client.searches.size() == 1
+    }
+
+    def "should stop when the links loop back on themselves"() {
+        given:
+            def client = new TreeJiraClient([issue("A-1", parentKey: "B-1"), issue("B-1", parentKey: "A-1")])
+        when:
+            def hierarchy = client.findHierarchy(["A-1"], ParentLink.parent(), 10)
+        then:
+            hierarchy.issues*.key == ["A-1", "B-1"]
+            hierarchy.depth == 1
+            client.searches.size() == 2
+    }
+
+    def "should find the children of many parents with one query"() {
+        expect:
+            ParentLink.epicLink().childrenOf(["E-1", "E-2"]) == '"Epic Link" in ("E-1","E-2")'
+            ParentLink.anyOf(ParentLink.epicLink(), ParentLink.parent()).childrenOf(["E-1"]) ==
+                    '("Epic Link" in ("E-1")) OR (parent in ("E-1"))'
+    }
+
+    def "should read the parent key from linked issue fields"() {
+        expect:
+            ParentLink.customField("Parent Link").parentOf(
+                    issue("S-1", customFields: ["Parent Link": '{"id":10,"data":{"key":"I-7"}}'])).get() == "I-7"
+    }
+
+    def "should decode the parent of a sub-task when it is requested"() {
+        given:
+            def decoder = new JiraResponseDecoder([], [:], [:])
+            def json = '{"key":"T-1","fields":{"summary":"task","parent":{"id":"10","key":"S-1","fields":{}}}}'
+        when:
+            def subTask = decoder.readIssue(new ByteArrayInputStream(json.getBytes("UTF-8")))
+        then:
+            subTask.parentKey.get() == "S-1"
+            ParentLink.parent().parentOf(subTask).get() == "S-1"
+            !subTask.customField("parent").isPresent()
+    }
+
+    def "should not take a custom field named parent for the parent of a sub-task"() {
+        expect:
+            !ParentLink.parent().parentOf(issue("T-1", customFields: [parent: "S-1"])).isPresent()
+    }
+}
@@ -0,0 +1,88 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenLoadingIssuesAsynchronously extends Specification {
+
+    static final String ISSUE = '{"id":"10001","key":"DEMO-1","self":"http://localhost/rest/api/2/issue/10001",' +
+                                '"fields":{"summary":"Grow potatoes","issuetype":{"name":"Story"},' +
+                                '"customfield_10002":"Grow big potatoes"}}'
+
+    StubJiraServer server
+    CountDownLatch catalogReleased = new CountDownLatch(1)
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            if (path == "/rest/api/2/field") {
+                catalogReleased.await()
+                respond(exchange, 200, '[{"id":"customfield_10002","name":"Acceptance Criteria"}]')
+            } else if (path.endsWith("/search")) {
+                respond(exchange, 200, '{"startAt":0,"maxResults":50,"total":1,"issues":[' + ISSUE + ']}')
+            } else {
+                respond(exchange, 200, ISSUE)
+            }
+        })
+        client = new JerseyJiraClient(server.url, "user", "password", "DEMO", ["Acceptance Criteria"])
+    }
+
+    def cleanup() {
+        catalogReleased.countDown()
+        client.close()
+        server.stop()
+    }
+
+    @Timeout(20)
+    def "a JQL search should not wait for the field catalog on the calling thread"() {
+        when:
+            def issues = client.findByJQLAsync("project = DEMO")
+        then:
+            !issues.isDone()
+        when:
+            catalogReleased.countDown()
+        then:
+            issues.get(10, TimeUnit.SECONDS)*.key == ["DEMO-1"]
+            issues.get()[0].customField("Acceptance Criteria").isPresent()
+    }
+
+    @Timeout(20)
+    def "a lookup by key should not wait for the field catalog on the calling thread"() {
+        when:
+            def issue = client.findByKeyAsync("DEMO-1")
+        then:
+            !issue.isDone()
+        when:
+            catalogReleased.countDown()
+        then:
+            issue.get(10, TimeUnit.SECONDS).get().key == "DEMO-1"
+    }
+
+    @Timeout(20)
+    def "a lookup by key should not wait on the search threads for the persistent cache to be revalidated"() {
+        given:
+            catalogReleased.countDown()
+            def cacheSettings = JiraCacheSettings.defaults()
+                    .withPersistentCache(Files.createTempDirectory("jira-issues").toFile())
+                    .withRevalidationInterval(0)
+            def singleSearchThreadClient = new JerseyJiraClient(server.url, "user", "password", 100, "DEMO", "Story",
+                    ["Acceptance Criteria"],
+                    JiraConnectionSettings.defaults().withSearchParallelism(1), cacheSettings)
+            singleSearchThreadClient.findByKey("DEMO-1")
+        when:
+            def issue = singleSearchThreadClient.findByKeyAsync("DEMO-2")
+        then:
+            issue.get(10, TimeUnit.SECONDS).isPresent()
+        cleanup:
+            singleSearchThreadClient?.close()
+    }
+}
@@ -0,0 +1,126 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenLoadingIssuesByKeys extends Specification {
+
+    static final Map<String, String> MOVED_KEYS = ["OLD-7": "NEW-3"]
+
+    StubJiraServer server
+    AtomicInteger searches = new AtomicInteger()
+    List<String> issueRequests = [].asSynchronized()
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            String path = exchange.requestURI.path
+            if (path.endsWith("/search")) {
+                searches.incrementAndGet()
+                List<String> keys = (exchange.requestBody.text =~ /[A-Za-z]+-\d+/).collect { it }
+                if (keys.any { it.startsWith("BAD") }) {
+                    respond(exchange, 400, '{"errorMessages":["An issue key is not valid"]}')
+                } else {
+                    def issues = keys.collect { currentKeyOf(it) }.findAll { it != null }.collect { issue(it) }
+                    respond(exchange, 200, '{"startAt":0,"maxResults":' + keys.size() + ',"total":' + issues.size() +
+                                           ',"issues":[' + issues.join(",") + ']}')
+                }
+            } else if (path.startsWith("/rest/api/2/issue/")) {
+                String key = path.substring("/rest/api/2/issue/".length())
+                issueRequests << key
+                String currentKey = currentKeyOf(key)
+                respond(exchange, currentKey == null ? 404 : 200, currentKey == null ? '{}' : issue(currentKey))
+            } else {
+                respond(exchange, 200, '[]')
+            }
+        })
+        client = new JerseyJiraClient(server.url, "user", "password", "DEMO")
+    }
+
+    def cleanup() {
+        client.close()
+        server.stop()
+    }
+
+    /**
+     * JIRA finds issues by a key in any case, or by a key they had before they were moved.
+     */
+    private static String currentKeyOf(String requestedKey) {
+        String key = requestedKey.toUpperCase(Locale.ENGLISH)
+        if (MOVED_KEYS.containsKey(key)) {
+            return MOVED_KEYS[key]
+        }
+        (key ==~ /DEMO-\d+/ && (key - "DEMO-").toInteger() <= 250) ? key : null
+    }
+
+    private static String issue(String key) {
+        '{"id":"' + Math.abs(key.hashCode()) + '","key":"' + key + '","self":"http://localhost/rest/api/2/issue/' + key +
+        '","fields":{"summary":"Summary of ' + key + '"}}'
+    }
+
+    def "should load the issues with a search per batch of keys"() {
+        given:
+            def keys = (1..250).collect { "DEMO-" + it }
+        when:
+            def issues = client.findByKeys(keys)
+        then:
+            issues.keySet() as List == keys
+            issues.values().every { it.isPresent() }
+            issues["DEMO-250"].get().summary == "Summary of DEMO-250"
+            searches.get() == 3
+            issueRequests.isEmpty()
+    }
+
+    def "should match issues found by a key in lower case to the requested key"() {
+        when:
+            def issues = client.findByKeys(["demo-1", "DEMO-2"])
+        then:
+            issues["demo-1"].get().key == "DEMO-1"
+            issues["DEMO-2"].get().key == "DEMO-2"
+            issueRequests.isEmpty()
+    }
+
+    def "should find a moved issue by its old key"() {
+        when:
+            def issues = client.findByKeys(["DEMO-1", "OLD-7", "DEMO-999"])
+        then:
+            issues["DEMO-1"].get().key == "DEMO-1"
+            issues["OLD-7"].get().key == "NEW-3"
+            !issues["DEMO-999"].isPresent()
+            issueRequests.sort() == ["DEMO-999", "OLD-7"]
+    }
+
+    def "should not look up missing keys one by one when every result was matched"() {
+        when:
+            def issues = client.findByKeys(["DEMO-1", "DEMO-999"])
+        then:
+            issues["DEMO-1"].isPresent()
+            !issues["DEMO-999"].isPresent()
+            issueRequests.isEmpty()
+    }
+
+    def "should load the keys one by one if the server rejects the search"() {
+        when:
+            def issues = client.findByKeys(["DEMO-1", "BAD-1", "OLD-7"])
+        then:
+            searches.get() == 1
+            issueRequests == ["DEMO-1", "BAD-1", "OLD-7"]
+            issues["DEMO-1"].get().key == "DEMO-1"
+            !issues["BAD-1"].isPresent()
+            issues["OLD-7"].get().key == "NEW-3"
+    }
+
+    def "should find which cached keys the server still has an issue under"() {
+        when:
+            def existingKeys = client.existingKeysIn(["DEMO-1", "DEMO-999", "OLD-7"])
+        then:
+            existingKeys == ["DEMO-1"] as Set
+            searches.get() == 1
+            issueRequests.isEmpty()
+    }
+}
@@ -0,0 +1,129 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenPrefetchingTheProject extends Specification {
+
+    static List<Integer> requestedPages = [].asSynchronized()
+    static boolean failOnce
+    static RuntimeException failure
+
+    static int lastIdIn(String query) {
+        def lastSeenId = (query =~ /id > (\d+)/)
+        lastSeenId ? lastSeenId[0][1] as int : 0
+    }
+
+    static class PagedJiraClient extends StubJiraClient {
+        PagedJiraClient(JiraCacheSettings cacheSettings = JiraCacheSettings.defaults()) {
+            super([], cacheSettings.withProjectPrefetch())
+        }
+
+        @Override
+        protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt) {
+            def lastSeenId = lastIdIn(query)
+            requestedPages << lastSeenId
+            if (failure != null) {
+                throw failure
+            }
+            if (lastSeenId == 2 && failOnce) {
+                failOnce = false
+                throw new JSONException("JIRA query failed: error 503")
+            }
+            def issues = (lastSeenId >= 5) ? [] :
+                    (lastSeenId + 1..Math.min(lastSeenId + 2, 5)).collect { issue("DEMO-" + it) }
+            new SearchResultPage(0, 2, 5 - lastSeenId, issues)
+        }
+    }
+
+    def setup() {
+        requestedPages.clear()
+        failure = null
+    }
+
+    def waitForPrefetch(JerseyJiraClient client) {
+        for (int i = 0; i < 100 && !client.prefetchProgress.get().complete; i++) {
+            Thread.sleep(50)
+        }
+    }
+
+    def "should load every issue of the project into the issue cache"() {
+        given:
+            def client = new PagedJiraClient()
+        when:
+            waitForPrefetch(client)
+        then:
+            client.prefetchProgress.get().loadedIssues == 5
+            client.findByKey("DEMO-4").get().key == "DEMO-4"
+            requestedPages == [0, 2, 4]
+        cleanup:
+            client.close()
+    }
+
+    def "should not start loading until the client is first used"() {
+        given:
+            def client = new PagedJiraClient()
+        when:
+            Thread.sleep(300)
+        then:
+            requestedPages.isEmpty()
+        when:
+            client.findByKey("DEMO-1")
+            waitForPrefetch(client)
+        then:
+            requestedPages == [0, 2, 4]
+        cleanup:
+            client.close()
+    }
+
+    def "should resume after the last loaded issue following a failure"() {
+        given:
+            failOnce = true
+            def client = new PagedJiraClient()
+        when:
+            waitForPrefetch(client)
+        then:
+            client.prefetchProgress.get().complete
+            requestedPages == [0, 2, 2, 4]
+        cleanup:
+            client.close()
+    }
+
+    def "should carry on from the checkpoint saved with the persistent cache"() {
+        given:
+            def cacheDirectory = Files.createTempDirectory("jira-issues").toFile()
+            def cacheSettings = JiraCacheSettings.defaults().withPersistentCache(cacheDirectory)
+            def firstClient = new PagedJiraClient(cacheSettings)
+            waitForPrefetch(firstClient)
+            firstClient.close()
+            requestedPages.clear()
+        when:
+            def client = new PagedJiraClient(cacheSettings)
+            waitForPrefetch(client)
+        then:
+            requestedPages == [5]
+            client.prefetchProgress.get().loadedIssues == 5
+            cacheDirectory.listFiles()[0].list().findAll { it.endsWith(".issue") }.size() == 5
+        cleanup:
+            client.close()
+    }
+
+    def "should give up at once when the server rejects the user"() {
+        given:
+            failure = new JIRAAuthenticationError("Authentication error (401) for user user")
+            def client = new PagedJiraClient()
+        when:
+            client.prefetchProgress
+            Thread.sleep(1500)
+        then:
+            requestedPages == [0]
+            !client.prefetchProgress.get().complete
+        cleanup:
+            client.close()
+    }
+}
@@ -0,0 +1,35 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+class WhenProjectingIssueFields extends Specification {
+
+    def "should always request the issue key"() {
+        when:
+            def projection = FieldProjection.fields("summary")
+        then:
+            projection.fields == ["key", "summary"] as Set
+        and:
+            !projection.includesCustomFields()
+            !projection.includesRenderedFields()
+    }
+
+    def "should add registered custom field ids only when custom fields are projected"() {
+        expect:
+            FieldProjection.fields("summary").fieldsParameter(["customfield_10001"]) == "key,summary"
+            FieldProjection.fields("summary").withCustomFields().fieldsParameter(["customfield_10001"]) == "key,summary,customfield_10001"
+    }
+
+    def "projections with the same fields should be equal"() {
+        expect:
+            FieldProjection.fields("summary") == FieldProjection.KEYS_AND_SUMMARIES
+            FieldProjection.fields("summary").withRenderedFields() != FieldProjection.KEYS_AND_SUMMARIES
+    }
+
+    def "the full projection should cover narrower projections"() {
+        expect:
+            FieldProjection.ALL.covers(FieldProjection.KEYS_AND_SUMMARIES)
+            FieldProjection.ALL.covers(FieldProjection.fields("labels").withCustomFields())
+            !FieldProjection.KEYS_AND_SUMMARIES.covers(FieldProjection.ALL)
+    }
+}
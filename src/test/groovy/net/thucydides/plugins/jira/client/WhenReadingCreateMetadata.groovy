@@ -0,0 +1,37 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+class WhenReadingCreateMetadata extends Specification {
+
+    def createMetadata = '''{"projects":[{"key":"DEMO","issuetypes":[
+        {"name":"Story","fields":{
+            "summary":{"name":"Summary"},
+            "customfield_10001":{"name":"Requirements","allowedValues":[
+                {"value":"Grow Apples","children":[{"value":"Grow red apples"},{"value":"Grow green apples"}]},
+                {"value":"Grow Potatoes","children":[{"value":"Grow normal potatoes"}]}]}}},
+        {"name":"Bug","fields":{
+            "customfield_10009":{"name":"Severity","allowedValues":[{"value":"High"},{"value":"Low"}]}}}]}]}'''
+
+    def metadata = JiraResponseDecoder.withoutCustomFields()
+                                      .readCreateMetadata(new ByteArrayInputStream(createMetadata.getBytes("UTF-8")), "DEMO")
+
+    def "should read the options of every issue type"() {
+        expect:
+            metadata.optionsFor("Story", "Requirements").get().options*.option == ["Grow Apples", "Grow Potatoes"]
+            metadata.optionsFor("bug", "severity").get().options*.option == ["High", "Low"]
+            !metadata.optionsFor("Bug", "Requirements").isPresent()
+            !metadata.optionsFor("Story", "Summary").isPresent()
+    }
+
+    def "should find nested options by their path"() {
+        when:
+            def options = metadata.optionsFor("Story", "Requirements").get()
+            def option = options.findOption("Grow Apples", "Grow green apples").get()
+        then:
+            option.option == "Grow green apples"
+            option.parentOption.get().is(options.findOption("Grow Apples").get())
+            !options.findOption("Grow Potatoes", "Grow green apples").isPresent()
+            options.size() == 5
+    }
+}
@@ -0,0 +1,53 @@
+package net.thucydides.plugins.jira.client
+
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraClient
+import net.thucydides.plugins.jira.domain.IssueSummary
+import org.json.JSONException
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenRefreshingCachedQueries extends Specification {
+
+    static class KeySearchingJiraClient extends StubJiraClient {
+        final List<List<String>> keyBatches = [].asSynchronized()
+
+        KeySearchingJiraClient() {
+            super([issue("DEMO-1"), issue("DEMO-2")])
+        }
+
+        @Override
+        protected SearchResultPage loadPage(String query, FieldProjection projection, int startAt, int maxResults)
+                throws JSONException {
+            if (query.contains("updated >=")) {
+                searches << query
+                return new SearchResultPage(startAt, maxResults, 0, [])
+            }
+            super.loadPage(query, projection, startAt, maxResults)
+        }
+
+        @Override
+        protected Map<String, IssueSummary> loadKeyBatch(List<String> keys, FieldProjection projection) {
+            keyBatches << keys
+            keys.findAll { issues.containsKey(it) }.collectEntries { [(it): issues[it]] }
+        }
+    }
+
+    KeySearchingJiraClient client = new KeySearchingJiraClient()
+
+    def cleanup() {
+        client.close()
+    }
+
+    def "should load issues that have come to match the query with a key search that skips unknown keys"() {
+        given:
+            client.findByJQL("project = DEMO")
+            client.issues["DEMO-3"] = issue("DEMO-3")
+        when:
+            def issues = client.refreshByJQL("project = DEMO")
+        then:
+            issues*.key == ["DEMO-1", "DEMO-2", "DEMO-3"]
+            client.keyBatches == [["DEMO-3"]]
+            !client.searches.any { it.contains("key in") }
+    }
+}
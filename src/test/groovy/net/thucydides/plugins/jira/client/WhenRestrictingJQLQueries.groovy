@@ -0,0 +1,45 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.base.Optional
+import spock.lang.Specification
+
+class WhenRestrictingJQLQueries extends Specification {
+
+    def "should add a condition to a query"() {
+        expect:
+            JQLClauses.restrict("project = DEMO OR labels = urgent", "updated >= \"-5m\"") ==
+                    "(project = DEMO OR labels = urgent) AND updated >= \"-5m\""
+    }
+
+    def "should keep the ORDER BY clause at the end of the query"() {
+        expect:
+            JQLClauses.restrict("project = DEMO order by rank ASC", "updated >= \"-5m\"") ==
+                    "(project = DEMO) AND updated >= \"-5m\" order by rank ASC"
+    }
+
+    def "should restrict a query that only sorts the results"() {
+        expect:
+            JQLClauses.restrict("ORDER BY key", "updated >= \"-5m\"") == "updated >= \"-5m\" ORDER BY key"
+    }
+
+    def "should not take ORDER BY inside a quoted value for the ORDER BY clause"() {
+        expect:
+            JQLClauses.restrict("summary ~ \"order by date\"", "updated >= \"-5m\"") ==
+                    "(summary ~ \"order by date\") AND updated >= \"-5m\""
+            JQLClauses.restrict("summary ~ 'order by date' ORDER BY key", "updated >= \"-5m\"") ==
+                    "(summary ~ 'order by date') AND updated >= \"-5m\" ORDER BY key"
+            !JQLClauses.isOrdered("summary ~ \"sort ORDER BY rank\"")
+            JQLClauses.isOrdered("summary ~ \"order by\" order by rank")
+            JQLClauses.afterId("summary ~ \"order by date\"", Optional.of(10100L)) ==
+                    "(summary ~ \"order by date\") AND id > 10100 ORDER BY id ASC"
+    }
+
+    def "should page through a query by issue id"() {
+        expect:
+            JQLClauses.afterId("project = DEMO OR labels = urgent", Optional.absent()) ==
+                    "project = DEMO OR labels = urgent ORDER BY id ASC"
+            JQLClauses.afterId("project = DEMO OR labels = urgent", Optional.of(10100L)) ==
+                    "(project = DEMO OR labels = urgent) AND id > 10100 ORDER BY id ASC"
+            JQLClauses.afterId("", Optional.of(10100L)) == "id > 10100 ORDER BY id ASC"
+    }
+}
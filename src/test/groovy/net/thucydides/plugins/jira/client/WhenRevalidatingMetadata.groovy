@@ -0,0 +1,124 @@
+package net.thucydides.plugins.jira.client
+
+import com.sun.net.httpserver.HttpExchange
+import net.thucydides.plugins.jira.client.JiraFixtures.StubJiraServer
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.respond
+
+class WhenRevalidatingMetadata extends Specification {
+
+    static final String LAST_MODIFIED = "Wed, 01 Jan 2014 10:00:00 GMT"
+
+    StubJiraServer server
+    volatile List<String> versionNames = ["Version 1.0"]
+    volatile String eTag
+    volatile String lastModified
+    List<Map<String, String>> versionRequests = [].asSynchronized()
+    AtomicInteger fullDownloads = new AtomicInteger()
+    JerseyJiraClient client
+
+    def setup() {
+        server = new StubJiraServer({ HttpExchange exchange ->
+            if (exchange.requestURI.path != "/rest/api/latest/project/DEMO/versions") {
+                respond(exchange, 404, '{}')
+                return
+            }
+            String ifNoneMatch = exchange.requestHeaders.getFirst("If-None-Match")
+            String ifModifiedSince = exchange.requestHeaders.getFirst("If-Modified-Since")
+            versionRequests << ["If-None-Match": ifNoneMatch, "If-Modified-Since": ifModifiedSince]
+            if ((eTag != null && ifNoneMatch == eTag) || (lastModified != null && ifModifiedSince == lastModified)) {
+                respond(exchange, 304, null)
+                return
+            }
+            fullDownloads.incrementAndGet()
+            Map<String, String> validators = [:]
+            if (eTag != null) {
+                validators["ETag"] = eTag
+            }
+            if (lastModified != null) {
+                validators["Last-Modified"] = lastModified
+            }
+            respond(exchange, 200, '[' + (1..versionNames.size()).collect { id ->
+                '{"id":"' + id + '","name":"' + versionNames[id - 1] + '","self":"http://localhost/rest/api/2/version/' +
+                id + '","released":false,"archived":false}'
+            }.join(",") + ']', validators)
+        })
+    }
+
+    def cleanup() {
+        client.close()
+        server.stop()
+    }
+
+    private JerseyJiraClient clientWith(JiraCacheSettings cacheSettings) {
+        client = new JerseyJiraClient(server.url, "user", "password", 100, "DEMO", "Story", [],
+                                      JiraConnectionSettings.defaults(), cacheSettings)
+    }
+
+    def "should read versions that have not changed again from a not-modified response"() {
+        given:
+            eTag = '"v1"'
+            clientWith(JiraCacheSettings.defaults())
+        when:
+            client.findVersionsForProject("DEMO")
+            def versions = client.findVersionsForProject("DEMO")
+        then:
+            versions*.name == ["Version 1.0"]
+            versionRequests*."If-None-Match" == [null, '"v1"']
+            fullDownloads.get() == 1
+    }
+
+    def "should download the versions again once they have changed"() {
+        given:
+            eTag = '"v1"'
+            clientWith(JiraCacheSettings.defaults())
+            client.findVersionsForProject("DEMO")
+        when:
+            versionNames = ["Version 1.0", "Version 1.1"]
+            eTag = '"v2"'
+            def versions = client.findVersionsForProject("DEMO")
+        then:
+            versions*.name == ["Version 1.0", "Version 1.1"]
+            fullDownloads.get() == 2
+        when:
+            versions = client.findVersionsForProject("DEMO")
+        then:
+            versions*.name == ["Version 1.0", "Version 1.1"]
+            versionRequests.last()."If-None-Match" == '"v2"'
+            fullDownloads.get() == 2
+    }
+
+    def "should revalidate with the last modified date when there is no ETag"() {
+        given:
+            lastModified = LAST_MODIFIED
+            clientWith(JiraCacheSettings.defaults())
+        when:
+            client.findVersionsForProject("DEMO")
+            def versions = client.findVersionsForProject("DEMO")
+        then:
+            versions*.name == ["Version 1.0"]
+            versionRequests*."If-Modified-Since" == [null, LAST_MODIFIED]
+            fullDownloads.get() == 1
+    }
+
+    def "should reuse versions sent without validators until they are no longer fresh"() {
+        given:
+            clientWith(JiraCacheSettings.defaults().withMetadataFreshness(200))
+        when:
+            client.findVersionsForProject("DEMO")
+            client.findVersionsForProject("DEMO")
+        then:
+            versionRequests.size() == 1
+        when:
+            versionNames = ["Version 2.0"]
+            Thread.sleep(300)
+            def versions = client.findVersionsForProject("DEMO")
+        then:
+            versions*.name == ["Version 2.0"]
+            versionRequests.size() == 2
+            fullDownloads.get() == 2
+    }
+}
@@ -0,0 +1,101 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.util.concurrent.SettableFuture
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class WhenSharingInFlightLoads extends Specification {
+
+    def loads = new InFlightLoads<String, String>()
+
+    def "concurrent callers for the same key should share one load"() {
+        given:
+            def load = SettableFuture.create()
+            def started = 0
+            def loader = { started++; load } as Callable
+        when:
+            def first = loads.join("DEMO-1", loader)
+            def second = loads.join("DEMO-1", loader)
+            load.set("issue")
+        then:
+            started == 1
+            first.get() == "issue"
+            second.get() == "issue"
+    }
+
+    def "a new load should be started once the previous one has completed"() {
+        given:
+            def started = 0
+            def loader = { started++; SettableFuture.create().with { set("issue"); it } } as Callable
+        when:
+            loads.join("DEMO-1", loader).get()
+            loads.join("DEMO-1", loader).get()
+        then:
+            started == 2
+    }
+
+    def "the load should only be cancelled when every caller has cancelled"() {
+        given:
+            def load = SettableFuture.create()
+            def loader = { load } as Callable
+            def first = loads.join("DEMO-1", loader)
+            def second = loads.join("DEMO-1", loader)
+        when:
+            first.cancel(true)
+        then:
+            !load.isCancelled()
+        when:
+            second.cancel(true)
+        then:
+            load.isCancelled()
+            !loads.joinIfPresent("DEMO-1").isPresent()
+    }
+
+    @Timeout(10)
+    def "callers joining a load should not wait for its loader to return"() {
+        given:
+            def loaderStarted = new CountDownLatch(1)
+            def releaseLoader = new CountDownLatch(1)
+            def load = SettableFuture.create()
+            def loader = { loaderStarted.countDown(); releaseLoader.await(); load } as Callable
+            def executor = Executors.newSingleThreadExecutor()
+        when:
+            executor.submit({ loads.join("DEMO-1", loader) } as Callable)
+            loaderStarted.await()
+            def second = loads.joinIfPresent("DEMO-1")
+            releaseLoader.countDown()
+            load.set("issue")
+        then:
+            second.isPresent()
+            second.get().get(5, TimeUnit.SECONDS) == "issue"
+        cleanup:
+            releaseLoader.countDown()
+            executor.shutdownNow()
+    }
+
+    def "a load abandoned while its loader runs should be cancelled once the loader returns"() {
+        given:
+            def abandonedLoad = SettableFuture.create()
+            def nextLoad = SettableFuture.create()
+            def started = 0
+            def loader = {
+                started++
+                if (started == 1) {
+                    loads.joinIfPresent("DEMO-1").get().cancel(true)
+                    return abandonedLoad
+                }
+                nextLoad
+            } as Callable
+        when:
+            def caller = loads.join("DEMO-1", loader)
+            nextLoad.set("issue")
+        then:
+            abandonedLoad.isCancelled()
+            caller.get() == "issue"
+    }
+}
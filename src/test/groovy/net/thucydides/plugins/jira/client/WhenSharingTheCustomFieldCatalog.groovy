@@ -0,0 +1,53 @@
+package net.thucydides.plugins.jira.client
+
+import com.google.common.base.Optional
+import net.thucydides.plugins.jira.model.CustomField
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.Callable
+
+class WhenSharingTheCustomFieldCatalog extends Specification {
+
+    def downloads = 0
+    def download = {
+        downloads++
+        new CustomFieldCatalog([new CustomField("customfield_10001", "Requirements", "array")],
+                               System.currentTimeMillis())
+    } as Callable
+
+    def "should index the fields by name and by id"() {
+        when:
+            def catalog = CustomFieldCatalogs.catalogFor("indexed@jira", 60000, Optional.absent(), download)
+        then:
+            catalog.fieldsByName["Requirements"].id == "customfield_10001"
+            catalog.namesById["customfield_10001"] == "Requirements"
+    }
+
+    def "should download the catalog once for each server"() {
+        when:
+            CustomFieldCatalogs.catalogFor("shared@jira", 60000, Optional.absent(), download)
+            CustomFieldCatalogs.catalogFor("shared@jira", 60000, Optional.absent(), download)
+        then:
+            downloads == 1
+    }
+
+    def "should download the catalog again when it has expired"() {
+        when:
+            CustomFieldCatalogs.catalogFor("expiring@jira", -1, Optional.absent(), download)
+            CustomFieldCatalogs.catalogFor("expiring@jira", -1, Optional.absent(), download)
+        then:
+            downloads == 2
+    }
+
+    def "should reuse a catalog stored by another JVM"() {
+        given:
+            def catalogFile = Optional.of(new File(Files.createTempDirectory("jira-fields").toFile(), "catalog.fields"))
+            CustomFieldCatalogs.catalogFor("first-jvm@jira", 60000, catalogFile, download)
+        when:
+            def catalog = CustomFieldCatalogs.catalogFor("second-jvm@jira", 60000, catalogFile, download)
+        then:
+            downloads == 1
+            catalog.fieldsByName["Requirements"].type == "array"
+    }
+}
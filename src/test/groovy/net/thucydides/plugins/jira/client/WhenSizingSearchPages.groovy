@@ -0,0 +1,51 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenSizingSearchPages extends Specification {
+
+    def page(int startAt, int maxResults, int issueCount, int total) {
+        def issues = (0..<issueCount).collect { issue("DEMO-" + (startAt + it)) }
+        new SearchResultPage(startAt, maxResults, total, issues)
+    }
+
+    def "should not ask for more issues than the server returns per page"() {
+        given:
+            def pageSizes = new PageSizer(100, 10, 1000)
+        when:
+            pageSizes.pageLoaded(100, page(0, 50, 50, 1000), 100, 10000)
+        then:
+            pageSizes.pageSize() == 50
+    }
+
+    def "should grow the page size while full pages arrive quickly"() {
+        given:
+            def pageSizes = new PageSizer(100, 10, 300)
+        when:
+            pageSizes.pageLoaded(100, page(0, 100, 100, 1000), 100, 10000)
+            pageSizes.pageLoaded(200, page(100, 200, 200, 1000), 100, 10000)
+        then:
+            pageSizes.pageSize() == 300
+    }
+
+    def "should shrink the page size when pages are slow"() {
+        given:
+            def pageSizes = new PageSizer(100, 40, 300)
+        when:
+            pageSizes.pageLoaded(100, page(0, 100, 100, 1000), 5000, 10000)
+            pageSizes.pageLoaded(50, page(100, 50, 50, 1000), 5000, 10000)
+        then:
+            pageSizes.pageSize() == 40
+    }
+
+    def "should keep the batch size when no bounds are configured"() {
+        given:
+            def pageSizes = new PageSizer(100, 100, 100)
+        when:
+            pageSizes.pageLoaded(100, page(0, 100, 100, 1000), 10, 1000)
+        then:
+            pageSizes.pageSize() == 100
+    }
+}
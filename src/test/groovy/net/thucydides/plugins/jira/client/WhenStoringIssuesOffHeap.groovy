@@ -0,0 +1,96 @@
+package net.thucydides.plugins.jira.client
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenStoringIssuesOffHeap extends Specification {
+
+    def issueUpdatedAt(String key, long updated) {
+        issue(key, rendered: ["description": "<p>description</p>"], labels: ["label"], fixVersions: ["Version 1.0"],
+              customFields: ["Requirements": ["Grow Potatoes", "Grow normal potatoes"]], updated: updated)
+    }
+
+    def "should find stored issues by key"() {
+        given:
+            def store = OffHeapIssueStore.inDirectMemory()
+        when:
+            (1..5000).each { store.put(issueUpdatedAt("DEMO-" + it, 1000)) }
+        then:
+            store.size() == 5000
+            store.get("DEMO-4321").get().summary == "summary of DEMO-4321"
+            store.get("DEMO-1").get().customField("Requirements").get().asListOf(String) ==
+                    ["Grow Potatoes", "Grow normal potatoes"]
+            !store.get("DEMO-5001").isPresent()
+    }
+
+    def "should keep the parent key of a stored sub-task"() {
+        given:
+            def store = OffHeapIssueStore.inDirectMemory()
+        when:
+            store.put(issue("DEMO-2", summary: "sub-task", description: null, type: "Sub-task", updated: 1000,
+                            parentKey: "DEMO-1"))
+            store.put(issueUpdatedAt("DEMO-1", 1000))
+        then:
+            store.get("DEMO-2").get().parentKey.get() == "DEMO-1"
+            !store.get("DEMO-1").get().parentKey.isPresent()
+    }
+
+    def "should keep the stored version of the issues in a view"() {
+        given:
+            def store = OffHeapIssueStore.mappedTo(Files.createTempFile("jira-issues", ".store").toFile())
+            def view = store.viewOf([issueUpdatedAt("DEMO-1", 1000), issueUpdatedAt("DEMO-2", 1000)])
+        when:
+            store.put(issueUpdatedAt("DEMO-1", 2000))
+        then:
+            view*.key == ["DEMO-1", "DEMO-2"]
+            view[0].updated.get().time == 1000
+            store.get("DEMO-1").get().updated.get().time == 2000
+            store.size() == 2
+        cleanup:
+            store.close()
+    }
+
+    def "should reclaim the space of earlier versions of the issues"() {
+        given:
+            def store = OffHeapIssueStore.inDirectMemory(16 * 1024)
+            (1..100).each { store.put(issueUpdatedAt("DEMO-" + it, 1000)) }
+            def allocatedForOneVersion = store.allocatedBytes
+        when:
+            (1..50).each { version -> (1..100).each { store.put(issueUpdatedAt("DEMO-" + it, 1000 + version)) } }
+        then:
+            store.size() == 100
+            store.allocatedBytes <= 4 * Math.max(allocatedForOneVersion, 16 * 1024)
+            (1..100).every { store.get("DEMO-" + it).get().updated.get().time == 1050 }
+            store.get("DEMO-42").get().customField("Requirements").get().asListOf(String) ==
+                    ["Grow Potatoes", "Grow normal potatoes"]
+    }
+
+    def "should not let a memory-mapped store grow without bound"() {
+        given:
+            def file = Files.createTempFile("jira-issues", ".store").toFile()
+            def store = OffHeapIssueStore.mappedTo(file, 16 * 1024)
+        when:
+            (1..50).each { version -> (1..100).each { store.put(issueUpdatedAt("DEMO-" + it, 1000 + version)) } }
+        then:
+            file.length() <= 4 * 16 * 1024 + 64 * 1024
+            store.get("DEMO-100").get().updated.get().time == 1050
+        cleanup:
+            store.close()
+            file.delete()
+    }
+
+    def "views should read the current versions of the issues once the store has been compacted"() {
+        given:
+            def store = OffHeapIssueStore.inDirectMemory(16 * 1024)
+            def view = store.viewOf((1..100).collect { issueUpdatedAt("DEMO-" + it, 1000) })
+        when:
+            (1..50).each { version -> (1..100).each { store.put(issueUpdatedAt("DEMO-" + it, 1000 + version)) } }
+        then:
+            view.size() == 100
+            view*.key == (1..100).collect { "DEMO-" + it }
+            view.every { it.updated.get().time == 1050 }
+    }
+}
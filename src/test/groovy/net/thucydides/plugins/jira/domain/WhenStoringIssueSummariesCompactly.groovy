@@ -0,0 +1,36 @@
+package net.thucydides.plugins.jira.domain
+
+import spock.lang.Specification
+
+import static net.thucydides.plugins.jira.client.JiraFixtures.issue
+
+class WhenStoringIssueSummariesCompactly extends Specification {
+
+    def issueWithOwnStrings(long id, String renderedDescription) {
+        issue("ISSUE-" + id, rendered: ["description": renderedDescription], type: new String("Story"),
+              labels: [new String("red")], customFields: ["Requirements": new String("Grow Potatoes")])
+    }
+
+    def "should share repeated types, labels and custom field values between issues"() {
+        given:
+            def first = issueWithOwnStrings(1L, "<p>one</p>")
+            def second = issueWithOwnStrings(2L, "<p>two</p>")
+        expect:
+            first.type.is(second.type)
+            first.labels.is(second.labels)
+            first.customField("Requirements").get().asString().is(second.customField("Requirements").get().asString())
+    }
+
+    def "should keep the values of each issue"() {
+        when:
+            def issue = issueWithOwnStrings(2L, "<p>two</p>")
+        then:
+            issue.id == 2L
+            issue.self == new URI("http://jira/rest/api/2/issue/2")
+            issue.rendered.description == "<p>two</p>"
+            issue.rendered.hasField("description")
+            !issue.rendered.hasField("summary")
+            !issue.customField("Acceptance Criteria").isPresent()
+            !issue.updated.isPresent()
+    }
+}